@@ -0,0 +1,61 @@
+package ca.bc.gov.ols.cpf.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ca.bc.gov.ols.cpf.AddressResult;
+import ca.bc.gov.ols.cpf.GeocoderPlugin;
+import ca.bc.gov.ols.cpf.GeocoderPluginContext;
+import ca.bc.gov.open.cpf.plugin.api.ResultAttribute;
+
+/**
+ * Measures the cost of reading a result the way CPF does when it writes the results out:
+ * reflectively calling every ResultAttribute getter, plus the customization properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AddressResultBenchmark {
+	private AddressResult result;
+	private Method[] getters;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		try(GeocoderPluginContext context = GeocoderPluginContext.dummy()) {
+			GeocoderPlugin plugin = context.createPlugin();
+			plugin.setAddressString("525 Superior St, Victoria, BC");
+			plugin.setMaxResults(1);
+			plugin.execute();
+			result = plugin.getResults().get(0);
+		}
+		List<Method> methods = new ArrayList<Method>();
+		for(Method method : AddressResult.class.getMethods()) {
+			if(method.isAnnotationPresent(ResultAttribute.class)) {
+				methods.add(method);
+			}
+		}
+		getters = methods.toArray(new Method[methods.size()]);
+	}
+
+	@Benchmark
+	public void getterSweep(Blackhole bh) throws IllegalAccessException,
+			InvocationTargetException {
+		for(Method getter : getters) {
+			bh.consume(getter.invoke(result));
+		}
+		bh.consume(result.getCustomizationProperties());
+	}
+}
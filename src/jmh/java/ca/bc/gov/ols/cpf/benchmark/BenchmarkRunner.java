@@ -0,0 +1,31 @@
+package ca.bc.gov.ols.cpf.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the plugin benchmarks with the GC profiler, so that allocation rates are reported along
+ * with throughput, and writes the results as JSON to target/jmh-result.json. Other standard JMH
+ * command line options may also be given, eg. "-prof stack".
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark")
+				.addProfiler(GCProfiler.class)
+				.warmupIterations(3)
+				.measurementIterations(5)
+				.forks(1)
+				.resultFormat(ResultFormatType.JSON)
+				.result("target/jmh-result.json")
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,50 @@
+package ca.bc.gov.ols.cpf.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import ca.bc.gov.ols.cpf.JobOptions;
+import ca.bc.gov.ols.geocoder.data.enumTypes.MatchPrecision;
+import ca.bc.gov.ols.util.GeomParseUtil;
+
+/**
+ * Measures the parsing of the job parameters, both from scratch and through the shared
+ * JobOptions used by every request in a job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParameterParsingBenchmark {
+	public String matchPrecision = "SITE,UNIT,CIVIC_NUMBER,BLOCK";
+	public String bbox = "1190000.5,380000.25,1220000.75,400000";
+	public String localities = "Victoria,Saanich,Esquimalt,Oak Bay,View Royal";
+
+	@Benchmark
+	public Object parseMatchPrecision() {
+		return MatchPrecision.parseList(matchPrecision);
+	}
+
+	@Benchmark
+	public double[] parseBbox() {
+		return GeomParseUtil.parseDoubleArray(bbox);
+	}
+
+	@Benchmark
+	public List<String> splitLocalities() {
+		return Arrays.asList(localities.toLowerCase().split(","));
+	}
+
+	@Benchmark
+	public JobOptions compiledJobOptions() {
+		return JobOptions.compile(matchPrecision, null, localities, null, null, bbox, "adaptive",
+				"any");
+	}
+}
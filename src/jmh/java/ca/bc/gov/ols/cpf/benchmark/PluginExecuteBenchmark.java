@@ -0,0 +1,61 @@
+package ca.bc.gov.ols.cpf.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ca.bc.gov.ols.cpf.AddressResult;
+import ca.bc.gov.ols.cpf.GeocoderPlugin;
+import ca.bc.gov.ols.cpf.GeocoderPluginContext;
+
+/**
+ * Measures the plugin-side cost of a request: creating the plugin bean, setting the job and
+ * request parameters, and executing against the dummy geocoder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PluginExecuteBenchmark {
+	@Param({"1", "10"})
+	public int maxResults;
+
+	private GeocoderPluginContext context;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = GeocoderPluginContext.dummy();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public List<AddressResult> execute() {
+		GeocoderPlugin plugin = context.createPlugin();
+		plugin.setMaxResults(maxResults);
+		plugin.setMinScore(0);
+		plugin.setSetBack(0);
+		plugin.setEcho("true");
+		plugin.setInterpolation("adaptive");
+		plugin.setLocationDescriptor("any");
+		plugin.setMatchPrecision("CIVIC_NUMBER,BLOCK");
+		plugin.setLocalities("victoria,saanich,esquimalt");
+		plugin.setAddressString("525 Superior St, Victoria, BC");
+		plugin.setProvinceCode("BC");
+		plugin.setYourId("1");
+		plugin.execute();
+		return plugin.getResults();
+	}
+}
@@ -0,0 +1,34 @@
+package ca.bc.gov.ols.cpf.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import ca.bc.gov.ols.cpf.CpfGeometryReprojector;
+
+/**
+ * Measures reprojection of a single point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReprojectorBenchmark {
+	private final GeometryFactory albers = new GeometryFactory(new PrecisionModel(1000), 3005);
+	private final GeometryFactory wgs84 = new GeometryFactory(new PrecisionModel(), 4326);
+	private final CpfGeometryReprojector reprojector = new CpfGeometryReprojector(albers);
+	private final Point point = wgs84.createPoint(new Coordinate(-123.370780, 48.417926));
+
+	@Benchmark
+	public Point reprojectPoint() {
+		return reprojector.reproject(point, 3005);
+	}
+}
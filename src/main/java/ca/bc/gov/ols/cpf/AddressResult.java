@@ -1,13 +1,18 @@
 package ca.bc.gov.ols.cpf;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import ca.bc.gov.ols.geocoder.api.data.AddressMatch;
 import ca.bc.gov.ols.geocoder.api.data.GeocodeMatch;
-import ca.bc.gov.ols.geocoder.api.data.GeocoderAddress;
 import ca.bc.gov.ols.geocoder.api.data.IntersectionMatch;
 import ca.bc.gov.ols.geocoder.api.data.SearchResults;
 import ca.bc.gov.ols.geocoder.config.GeocoderConfig;
@@ -18,207 +23,660 @@ import ca.bc.gov.ols.geocoder.data.enumTypes.PhysicalStatus;
 import ca.bc.gov.ols.geocoder.data.enumTypes.PositionalAccuracy;
 import ca.bc.gov.ols.geocoder.util.GeocoderUtil;
 import ca.bc.gov.open.cpf.plugin.api.GeometryConfiguration;
-import ca.bc.gov.open.cpf.plugin.api.GeometryFactory;
 import ca.bc.gov.open.cpf.plugin.api.ResultAttribute;
 
 import com.vividsolutions.jts.geom.Point;
 
 /**
  * AddressResult adapts from the deeply structured GeocodeMatch to a flatter structure more
- * compatible with the cpf.
+ * compatible with the cpf. The values are copied out of the match up front, with repeated
+ * strings such as locality and street names shared between results, so that the match graph
+ * can be released as soon as the request has executed.
  * 
  * @author chodgson
  */
 
 public class AddressResult {
-	private GeocodeMatch match;
-	private GeocoderConfig config;
-	private SearchResults searchResults;
+	// a direct-mapped table of recently seen strings, so that repeated values share one instance
+	// without keeping every value ever seen; racing updates only lose some sharing, as strings
+	// are immutable
+	private static final int INTERNED_SIZE = 4096;
+	private static final String[] INTERNED = new String[INTERNED_SIZE];
+	
+	private final String yourId;
+	private final String fullAddress;
+	private final String intersectionName;
+	private final int score;
+	private final MatchPrecision matchPrecision;
+	private final int precisionPoints;
+	private final String faults;
+	private final String siteName;
+	private final String unitDesignator;
+	private final String unitNumber;
+	private final String unitNumberSuffix;
+	private final String civicNumber;
+	private final String civicNumberSuffix;
+	private final String streetName;
+	private final String streetType;
+	private final Boolean isStreetTypePrefix;
+	private final String streetDirection;
+	private final Boolean isStreetDirectionPrefix;
+	private final String streetQualifier;
+	private final String localityName;
+	private final LocalityType localityType;
+	private final String electoralArea;
+	private final String provinceCode;
+	private final double x;
+	private final double y;
+	// created once, on first use; CPF reprojects it to the job's result SRID
+	private volatile Point location;
+	private final PositionalAccuracy locationPositionalAccuracy;
+	private final LocationDescriptor locationDescriptor;
+	private final String siteID;
+	private final Integer blockID;
+	private final String intersectionID;
+	private final String fullSiteDescriptor;
+	private final String accessNotes;
+	private final PhysicalStatus siteStatus;
+	private final LocalDate siteRetireDate;
+	private final LocalDate changeDate;
+	private final Boolean isOfficial;
+	private final Integer degree;
+	// not stored with the result, so set by the plugin for a stored result of a later request
+	private BigDecimal executionTime;
+	private final Integer sid;
+	private final boolean timedOut;
+	// relative to the request's previous result, so set by the plugin for each request
+	private ChangeStatus changeStatus;
+	// diagnostics of the request, set by the plugin only when the job asks for them, so they are
+	// output whatever the outputFields
+	private BigDecimal resolveTime;
+	private BigDecimal geocodeTime;
+	private Integer candidateCount;
+	private ResultSource resultSource;
+	
+	// kml customization values, copied from the config
+	private final boolean hasAddress;
+	private final String kmlStylesUrl;
+	private final Object lookAtRange;
+	
+	// the fields selected for output, or null for all fields
+	private final Set<ResultField> fields;
 	
 	// private String debugInfo;
 	
 	public AddressResult(GeocodeMatch match, SearchResults searchResults, GeocoderConfig config) {
-		this.match = match;
-		this.searchResults = searchResults;
-		this.config = config;
+		this(match, searchResults, config, match.getYourId());
+	}
+	
+	/**
+	 * Creates an AddressResult with the yourId of the request it is returned for, which may
+	 * differ from the yourId of the match when results are shared between requests.
+	 */
+	public AddressResult(GeocodeMatch match, SearchResults searchResults, GeocoderConfig config,
+			String yourId) {
+		this(match, searchResults, config, yourId, null);
+	}
+	
+	/**
+	 * Creates an AddressResult with only the given fields; the values of the other fields are
+	 * never computed, and their getters return null (or zero for the score and precision points).
+	 * 
+	 * All of the values are copied from the match when it is created, so the AddressResult does
+	 * not keep any reference to the match, the search results or the config.
+	 * 
+	 * @param fields the fields to include, or null for all fields
+	 */
+	public AddressResult(GeocodeMatch match, SearchResults searchResults, GeocoderConfig config,
+			String yourId, Set<ResultField> fields) {
+		this(match, searchResults.getExecutionTime(), config, yourId, fields);
+	}
+	
+	/**
+	 * Creates an AddressResult from a match that may have been found by an earlier request, with
+	 * the execution time of the request it is returned for.
+	 * 
+	 * @param executionTime the time taken to execute the request, in milliseconds
+	 * @param fields the fields to include, or null for all fields
+	 */
+	public AddressResult(GeocodeMatch match, BigDecimal executionTime, GeocoderConfig config,
+			String yourId, Set<ResultField> fields) {
+		this.yourId = has(fields, ResultField.YOUR_ID) ? yourId : null;
+		fullAddress = has(fields, ResultField.FULL_ADDRESS) ? match.getAddressString() : null;
+		score = match.getScore();
+		matchPrecision = match.getPrecision();
+		precisionPoints = match.getPrecisionPoints();
+		faults = has(fields, ResultField.FAULTS) && match.getFaults() != null
+				? match.getFaults().toString() : null;
+		localityName = has(fields, ResultField.LOCALITY_NAME) ? intern(match.getLocalityName())
+				: null;
+		localityType = has(fields, ResultField.LOCALITY_TYPE) ? match.getLocalityType() : null;
+		provinceCode = has(fields, ResultField.PROVINCE_CODE) ? intern(match.getStateProvTerr())
+				: null;
+		if(has(fields, ResultField.LOCATION)) {
+			org.locationtech.jts.geom.Point p = match.getLocation();
+			x = p.getX();
+			y = p.getY();
+		} else {
+			x = Double.NaN;
+			y = Double.NaN;
+		}
+		// always copied, as they are also used for the kml style
+		locationPositionalAccuracy = match.getAddress().getLocationPositionalAccuracy();
+		locationDescriptor = match.getAddress().getLocationDescriptor();
+		this.executionTime = has(fields, ResultField.EXECUTION_TIME) ? executionTime : null;
+		
+		if(match instanceof AddressMatch) {
+			AddressMatch am = (AddressMatch)match;
+			siteName = has(fields, ResultField.SITE_NAME) ? am.getAddress().getSiteName() : null;
+			unitDesignator = has(fields, ResultField.UNIT_DESIGNATOR)
+					? intern(am.getAddress().getUnitDesignator()) : null;
+			unitNumber = has(fields, ResultField.UNIT_NUMBER) ? am.getAddress().getUnitNumber()
+					: null;
+			unitNumberSuffix = has(fields, ResultField.UNIT_NUMBER_SUFFIX)
+					? am.getAddress().getUnitNumberSuffix() : null;
+			civicNumber = has(fields, ResultField.CIVIC_NUMBER)
+					? GeocoderUtil.formatCivicNumber(am.getAddress().getCivicNumber()) : null;
+			civicNumberSuffix = has(fields, ResultField.CIVIC_NUMBER_SUFFIX)
+					? am.getAddress().getCivicNumberSuffix() : null;
+			streetName = has(fields, ResultField.STREET_NAME)
+					? intern(am.getAddress().getStreetName()) : null;
+			streetType = has(fields, ResultField.STREET_TYPE)
+					? intern(am.getAddress().getStreetType()) : null;
+			if(has(fields, ResultField.IS_STREET_TYPE_PREFIX)) {
+				Boolean typePrefix = am.getAddress().isStreetTypePrefix();
+				isStreetTypePrefix = typePrefix != null && typePrefix;
+			} else {
+				isStreetTypePrefix = null;
+			}
+			streetDirection = has(fields, ResultField.STREET_DIRECTION)
+					? intern(am.getAddress().getStreetDirection()) : null;
+			if(has(fields, ResultField.IS_STREET_DIRECTION_PREFIX)) {
+				Boolean directionPrefix = am.getAddress().isStreetDirectionPrefix();
+				isStreetDirectionPrefix = directionPrefix != null && directionPrefix;
+			} else {
+				isStreetDirectionPrefix = null;
+			}
+			streetQualifier = has(fields, ResultField.STREET_QUALIFIER)
+					? intern(am.getAddress().getStreetQualifier()) : null;
+			electoralArea = has(fields, ResultField.ELECTORAL_AREA)
+					? intern(am.getAddress().getElectoralArea()) : null;
+			siteID = has(fields, ResultField.SITE_ID) ? am.getAddress().getSiteID() : null;
+			blockID = has(fields, ResultField.BLOCK_ID) ? am.getAddress().getStreetSegmentID()
+					: null;
+			fullSiteDescriptor = has(fields, ResultField.FULL_SITE_DESCRIPTOR)
+					? am.getAddress().getFullSiteDescriptor() : null;
+			// intentionally outputting narrativeLocation as AccessNotes
+			accessNotes = has(fields, ResultField.ACCESS_NOTES)
+					? am.getAddress().getNarrativeLocation() : null;
+			if(has(fields, ResultField.SITE_STATUS)) {
+				PhysicalStatus status = am.getAddress().getSiteStatus();
+				siteStatus = status == null ? PhysicalStatus.ACTIVE : status;
+			} else {
+				siteStatus = null;
+			}
+			siteRetireDate = has(fields, ResultField.SITE_RETIRE_DATE)
+					? am.getAddress().getSiteRetireDate() : null;
+			changeDate = has(fields, ResultField.CHANGE_DATE) ? am.getAddress().getSiteChangeDate()
+					: null;
+			isOfficial = has(fields, ResultField.IS_OFFICIAL) ? am.getAddress().isPrimary() : null;
+			sid = has(fields, ResultField.SID) ? am.getAddress().getSID() : null;
+		} else {
+			siteName = null;
+			unitDesignator = null;
+			unitNumber = null;
+			unitNumberSuffix = null;
+			civicNumber = null;
+			civicNumberSuffix = null;
+			streetName = null;
+			streetType = null;
+			isStreetTypePrefix = has(fields, ResultField.IS_STREET_TYPE_PREFIX) ? false : null;
+			streetDirection = null;
+			isStreetDirectionPrefix = has(fields, ResultField.IS_STREET_DIRECTION_PREFIX) ? false
+					: null;
+			streetQualifier = null;
+			electoralArea = null;
+			siteID = null;
+			blockID = null;
+			fullSiteDescriptor = null;
+			accessNotes = null;
+			siteStatus = has(fields, ResultField.SITE_STATUS) ? PhysicalStatus.ACTIVE : null;
+			siteRetireDate = null;
+			changeDate = null;
+			isOfficial = has(fields, ResultField.IS_OFFICIAL) ? true : null;
+			sid = null;
+		}
+		
+		if(match instanceof IntersectionMatch) {
+			IntersectionMatch im = (IntersectionMatch)match;
+			intersectionName = has(fields, ResultField.INTERSECTION_NAME)
+					? im.getAddress().getName() : null;
+			intersectionID = has(fields, ResultField.INTERSECTION_ID) ? im.getAddress().getID()
+					: null;
+			degree = has(fields, ResultField.DEGREE) ? im.getAddress().getDegree() : null;
+		} else {
+			intersectionName = null;
+			intersectionID = null;
+			degree = null;
+		}
+		
+		hasAddress = match instanceof AddressMatch || match instanceof IntersectionMatch;
+		if(config != null) {
+			kmlStylesUrl = config.getKmlStylesUrl();
+			lookAtRange = config.getDefaultLookAtRange();
+		} else {
+			kmlStylesUrl = null;
+			lookAtRange = null;
+		}
+		this.fields = fields;
+		timedOut = false;
+	}
+	
+	/**
+	 * Creates the result of a request that was not geocoded, with the reason in its faults.
+	 */
+	private AddressResult(String yourId, String faults, boolean timedOut) {
+		this.yourId = yourId;
+		fullAddress = null;
+		intersectionName = null;
+		score = 0;
+		matchPrecision = null;
+		precisionPoints = 0;
+		this.faults = faults;
+		siteName = null;
+		unitDesignator = null;
+		unitNumber = null;
+		unitNumberSuffix = null;
+		civicNumber = null;
+		civicNumberSuffix = null;
+		streetName = null;
+		streetType = null;
+		isStreetTypePrefix = null;
+		streetDirection = null;
+		isStreetDirectionPrefix = null;
+		streetQualifier = null;
+		localityName = null;
+		localityType = null;
+		electoralArea = null;
+		provinceCode = null;
+		x = Double.NaN;
+		y = Double.NaN;
+		locationPositionalAccuracy = null;
+		locationDescriptor = null;
+		siteID = null;
+		blockID = null;
+		intersectionID = null;
+		fullSiteDescriptor = null;
+		accessNotes = null;
+		siteStatus = null;
+		siteRetireDate = null;
+		changeDate = null;
+		isOfficial = null;
+		degree = null;
+		executionTime = null;
+		sid = null;
+		hasAddress = false;
+		kmlStylesUrl = null;
+		lookAtRange = null;
+		fields = null;
+		this.timedOut = timedOut;
+	}
+	
+	/**
+	 * @param yourId the yourId of the request
+	 * @param timeoutMillis the time budget the request exceeded
+	 * @return the single result returned for a request that timed out, with the timeout given in
+	 *         its faults
+	 */
+	public static AddressResult timedOut(String yourId, int timeoutMillis) {
+		return new AddressResult(yourId,
+				"TIMED_OUT: the request was not geocoded within " + timeoutMillis + " ms", true);
+	}
+	
+	/**
+	 * @param yourId the yourId of the request
+	 * @param region the region the request was routed to
+	 * @return the single result returned for a request in a region this worker does not hold
+	 */
+	public static AddressResult notInPartition(String yourId, String region) {
+		return new AddressResult(yourId,
+				"NOT_IN_PARTITION: the request is in region " + region
+						+ ", which is not held by this worker", false);
+	}
+	
+	/**
+	 * @param yourId the yourId of the request
+	 * @return the single result returned by a partitioned worker for a request whose locality is
+	 *         not in any region
+	 */
+	public static AddressResult unknownRegion(String yourId) {
+		return new AddressResult(yourId,
+				"UNKNOWN_REGION: the locality of the request is not in any region, so it is not"
+						+ " geocoded by a worker holding only some regions", false);
+	}
+	
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+	
+	/**
+	 * Creates a copy of another result for a different request.
+	 */
+	private AddressResult(AddressResult other, String yourId) {
+		this.yourId = has(other.fields, ResultField.YOUR_ID) ? yourId : null;
+		fullAddress = other.fullAddress;
+		intersectionName = other.intersectionName;
+		score = other.score;
+		matchPrecision = other.matchPrecision;
+		precisionPoints = other.precisionPoints;
+		faults = other.faults;
+		siteName = other.siteName;
+		unitDesignator = other.unitDesignator;
+		unitNumber = other.unitNumber;
+		unitNumberSuffix = other.unitNumberSuffix;
+		civicNumber = other.civicNumber;
+		civicNumberSuffix = other.civicNumberSuffix;
+		streetName = other.streetName;
+		streetType = other.streetType;
+		isStreetTypePrefix = other.isStreetTypePrefix;
+		streetDirection = other.streetDirection;
+		isStreetDirectionPrefix = other.isStreetDirectionPrefix;
+		streetQualifier = other.streetQualifier;
+		localityName = other.localityName;
+		localityType = other.localityType;
+		electoralArea = other.electoralArea;
+		provinceCode = other.provinceCode;
+		x = other.x;
+		y = other.y;
+		location = other.location;
+		locationPositionalAccuracy = other.locationPositionalAccuracy;
+		locationDescriptor = other.locationDescriptor;
+		siteID = other.siteID;
+		blockID = other.blockID;
+		intersectionID = other.intersectionID;
+		fullSiteDescriptor = other.fullSiteDescriptor;
+		accessNotes = other.accessNotes;
+		siteStatus = other.siteStatus;
+		siteRetireDate = other.siteRetireDate;
+		changeDate = other.changeDate;
+		isOfficial = other.isOfficial;
+		degree = other.degree;
+		executionTime = other.executionTime;
+		sid = other.sid;
+		hasAddress = other.hasAddress;
+		kmlStylesUrl = other.kmlStylesUrl;
+		lookAtRange = other.lookAtRange;
+		fields = other.fields;
+		timedOut = other.timedOut;
+		resolveTime = other.resolveTime;
+		geocodeTime = other.geocodeTime;
+		candidateCount = other.candidateCount;
+		resultSource = other.resultSource;
+	}
+	
+	/**
+	 * Reads a result written by writeTo(), for a request with the given yourId.
+	 */
+	private AddressResult(DataInput in, String yourId) throws IOException {
+		long mask = in.readLong();
+		if(mask == -1) {
+			fields = null;
+		} else {
+			EnumSet<ResultField> set = EnumSet.noneOf(ResultField.class);
+			for(ResultField field : ResultField.values()) {
+				if((mask & (1L << field.ordinal())) != 0) {
+					set.add(field);
+				}
+			}
+			fields = Collections.unmodifiableSet(set);
+		}
+		this.yourId = has(fields, ResultField.YOUR_ID) ? yourId : null;
+		fullAddress = readString(in);
+		intersectionName = readString(in);
+		score = in.readInt();
+		matchPrecision = readEnum(in, MatchPrecision.class);
+		precisionPoints = in.readInt();
+		faults = readString(in);
+		siteName = readString(in);
+		unitDesignator = intern(readString(in));
+		unitNumber = readString(in);
+		unitNumberSuffix = readString(in);
+		civicNumber = readString(in);
+		civicNumberSuffix = readString(in);
+		streetName = intern(readString(in));
+		streetType = intern(readString(in));
+		isStreetTypePrefix = readBoolean(in);
+		streetDirection = intern(readString(in));
+		isStreetDirectionPrefix = readBoolean(in);
+		streetQualifier = intern(readString(in));
+		localityName = intern(readString(in));
+		localityType = readEnum(in, LocalityType.class);
+		electoralArea = intern(readString(in));
+		provinceCode = intern(readString(in));
+		x = in.readDouble();
+		y = in.readDouble();
+		locationPositionalAccuracy = readEnum(in, PositionalAccuracy.class);
+		locationDescriptor = readEnum(in, LocationDescriptor.class);
+		siteID = readString(in);
+		blockID = readInteger(in);
+		intersectionID = readString(in);
+		fullSiteDescriptor = readString(in);
+		accessNotes = readString(in);
+		siteStatus = readEnum(in, PhysicalStatus.class);
+		String date = readString(in);
+		siteRetireDate = date == null ? null : LocalDate.parse(date);
+		date = readString(in);
+		changeDate = date == null ? null : LocalDate.parse(date);
+		isOfficial = readBoolean(in);
+		degree = readInteger(in);
+		executionTime = null;
+		sid = readInteger(in);
+		hasAddress = in.readBoolean();
+		kmlStylesUrl = intern(readString(in));
+		// written with its type, as the KML writer uses a number as given
+		byte lookAtRangeType = in.readByte();
+		lookAtRange = lookAtRangeType == 2 ? (Object)in.readInt()
+				: lookAtRangeType == 1 ? intern(in.readUTF()) : null;
+		timedOut = false;
+	}
+	
+	/**
+	 * Writes the values of this result, except for the yourId and execution time, which belong to
+	 * the request, in a compact binary form that can be read back by readFrom().
+	 * 
+	 * @param out the output to write to
+	 * @throws IOException if the output cannot be written
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		long mask = -1;
+		if(fields != null) {
+			mask = 0;
+			for(ResultField field : fields) {
+				mask |= 1L << field.ordinal();
+			}
+		}
+		out.writeLong(mask);
+		writeString(out, fullAddress);
+		writeString(out, intersectionName);
+		out.writeInt(score);
+		writeString(out, matchPrecision == null ? null : matchPrecision.name());
+		out.writeInt(precisionPoints);
+		writeString(out, faults);
+		writeString(out, siteName);
+		writeString(out, unitDesignator);
+		writeString(out, unitNumber);
+		writeString(out, unitNumberSuffix);
+		writeString(out, civicNumber);
+		writeString(out, civicNumberSuffix);
+		writeString(out, streetName);
+		writeString(out, streetType);
+		writeBoolean(out, isStreetTypePrefix);
+		writeString(out, streetDirection);
+		writeBoolean(out, isStreetDirectionPrefix);
+		writeString(out, streetQualifier);
+		writeString(out, localityName);
+		writeString(out, localityType == null ? null : localityType.name());
+		writeString(out, electoralArea);
+		writeString(out, provinceCode);
+		out.writeDouble(x);
+		out.writeDouble(y);
+		writeString(out, locationPositionalAccuracy == null ? null
+				: locationPositionalAccuracy.name());
+		writeString(out, locationDescriptor == null ? null : locationDescriptor.name());
+		writeString(out, siteID);
+		writeInteger(out, blockID);
+		writeString(out, intersectionID);
+		writeString(out, fullSiteDescriptor);
+		writeString(out, accessNotes);
+		writeString(out, siteStatus == null ? null : siteStatus.name());
+		writeString(out, siteRetireDate == null ? null : siteRetireDate.toString());
+		writeString(out, changeDate == null ? null : changeDate.toString());
+		writeBoolean(out, isOfficial);
+		writeInteger(out, degree);
+		writeInteger(out, sid);
+		out.writeBoolean(hasAddress);
+		writeString(out, kmlStylesUrl);
+		if(lookAtRange instanceof Integer) {
+			out.writeByte(2);
+			out.writeInt((Integer)lookAtRange);
+		} else {
+			writeString(out, lookAtRange == null ? null : lookAtRange.toString());
+		}
+	}
+	
+	/**
+	 * Reads a result written by writeTo(); it has no execution time until one is set.
+	 * 
+	 * @param in the input to read from
+	 * @param yourId the yourId of the request the result is returned for
+	 * @return the result
+	 * @throws IOException if the input cannot be read
+	 */
+	public static AddressResult readFrom(DataInput in, String yourId) throws IOException {
+		return new AddressResult(in, yourId);
+	}
+	
+	/**
+	 * @param yourId the yourId of the request the copy is returned for
+	 * @return a copy of this result with the given yourId
+	 */
+	public AddressResult withYourId(String yourId) {
+		return new AddressResult(this, yourId);
 	}
 	
 	@ResultAttribute(index = 10, description = "A unique identifier you have assigned to an address occupant.")
 	public String getYourId() {
-		return deNullify(match.getYourId());
+		return deNullify(yourId);
 	}
 	
 	@ResultAttribute(index = 20, description = "The complete address string in canonical form.")
 	public String getFullAddress() {
-		return deNullify(match.getAddressString());
+		return deNullify(fullAddress);
 	}
 	
 	@ResultAttribute(index = 30, description = "A common language description of the intersection. (eg. Howe St and Robson St")
 	public String getIntersectionName() {
-		String result = null;
-		if(match instanceof IntersectionMatch) {
-			result = ((IntersectionMatch)match).getAddress().getName();
-		}
-		return deNullify(result);
+		return deNullify(intersectionName);
 	}
 	
 	@ResultAttribute(index = 40, length = 3, scale = 0, description = "An indication of the quality of the match of the returned address, between 0 and 100; 100 is a perfect match")
 	public int getScore() {
-		return match.getScore();
+		return score;
 	}
 	
 	@ResultAttribute(index = 50, length = 25, description = "An indication of what level the address was matched on (UNIT, SITE, CIVIC_NUMBER, BLOCK, STREET, LOCALITY, or PROVINCE)")
 	public MatchPrecision getMatchPrecision() {
-		return match.getPrecision();
+		return matchPrecision;
 	}
 	
 	@ResultAttribute(index = 60, length = 3, scale = 0, description = "The associated highest possible score of a match with this matches given match precision.")
 	public int getPrecisionPoints() {
-		return match.getPrecisionPoints();
+		return precisionPoints;
 	}
 	
 	@ResultAttribute(index = 70, description = "The full list of elements that did not match the query and their associated penalty points that affect the score of the match.")
 	public String getFaults() {
-		return match.getFaults().toString();
+		return deNullify(faults);
 	}
 	
 	@ResultAttribute(index = 80)
 	public String getSiteName() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getSiteName();
-		}
-		return deNullify(result);
+		return deNullify(siteName);
 	}
 	
 	@ResultAttribute(index = 90, length = 25)
 	public String getUnitDesignator() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getUnitDesignator();
-		}
-		return deNullify(result);
+		return deNullify(unitDesignator);
 	}
 	
 	@ResultAttribute(index = 100, length = 25)
 	public String getUnitNumber() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getUnitNumber();
-		}
-		return deNullify(result);
+		return deNullify(unitNumber);
 	}
 	
 	@ResultAttribute(index = 110, length = 25)
 	public String getUnitNumberSuffix() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getUnitNumberSuffix();
-		}
-		return deNullify(result);
+		return deNullify(unitNumberSuffix);
 	}
 	
 	@ResultAttribute(index = 120, length = 9, scale = 0)
 	public String getCivicNumber() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = GeocoderUtil.formatCivicNumber(
-					((AddressMatch)match).getAddress().getCivicNumber());
-		}
-		return result;
+		return civicNumber;
 	}
 	
 	@ResultAttribute(index = 130, length = 25)
 	public String getCivicNumberSuffix() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getCivicNumberSuffix();
-		}
-		return deNullify(result);
+		return deNullify(civicNumberSuffix);
 	}
 	
 	@ResultAttribute(index = 140, length = 50)
 	public String getStreetName() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getStreetName();
-		}
-		return deNullify(result);
+		return deNullify(streetName);
 	}
 	
 	@ResultAttribute(index = 150, length = 25)
 	public String getStreetType() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getStreetType();
-		}
-		return deNullify(result);
+		return deNullify(streetType);
 	}
 	
 	@ResultAttribute(index = 155, description = "True if the street type is a prefix to the street name, such as Hwy 1, false if the street type is a suffix such as 1 St.")
 	public Boolean getIsStreetTypePrefix() {
-		Boolean result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().isStreetTypePrefix();
-		}
-		if(result == null) {
-			result = false;
-		}
-		return result;
+		return isStreetTypePrefix;
 	}
 	
 	@ResultAttribute(index = 160, length = 2)
 	public String getStreetDirection() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getStreetDirection();
-		}
-		return deNullify(result);
+		return deNullify(streetDirection);
 	}
 	
 	@ResultAttribute(index = 163, description = "True if the street direction is a prefix to the street name, such as West 1 Ave, false if the street direction is a suffix such as 1 Ave West.")
 	public Boolean getIsStreetDirectionPrefix() {
-		Boolean result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().isStreetDirectionPrefix();
-		}
-		if(result == null) {
-			result = false;
-		}
-		return result;
+		return isStreetDirectionPrefix;
 	}
 	
 	@ResultAttribute(index = 167, length = 25)
 	public String getStreetQualifier() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getStreetQualifier();
-		}
-		return deNullify(result);
+		return deNullify(streetQualifier);
 	}
 	
 	@ResultAttribute(index = 170, length = 50)
 	public String getLocalityName() {
-		return deNullify(match.getLocalityName());
+		return deNullify(localityName);
 	}
 	
 	@ResultAttribute(index = 180, length = 50, description = "(e.g., municipality, community, Indian reservation, subdivision, regional district, aboriginal lands, landmark, or natural feature)")
 	public LocalityType getLocalityType() {
-		return match.getLocalityType();
+		return localityType;
 	}
 
 	@ResultAttribute(index = 185, length = 50, description = "The Electoral Area the address is in, if the addresses locality is unincorporated.")
 	public String getElectoralArea() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getElectoralArea();
-		}
-		return result;
+		return electoralArea;
 	}
 
 	@ResultAttribute(index = 190, length = 2)
 	public String getProvinceCode() {
-		return deNullify(match.getStateProvTerr());
+		return deNullify(provinceCode);
 	}
 	
 	@ResultAttribute(index = 200, description = "point geometry assigned to this address")
@@ -228,131 +686,166 @@ public class AddressResult {
 			// scaleFactorXy=1000,
 			primaryGeometry = true)
 	public Point getLocation() {
-		org.locationtech.jts.geom.Point p = match.getLocation();
-		return GeocoderPlugin.GEOMETRY_FACTORY.createPoint(p.getX(), p.getY());
+		Point location = this.location;
+		if(location == null && !Double.isNaN(x)) {
+			location = GeocoderPlugin.GEOMETRY_FACTORY.createPoint(x, y);
+			this.location = location;
+		}
+		return location;
 	}
 	
 	@ResultAttribute(index = 210, length = 25, description = "Coarse - Street, Locality, or Province level match; Low - digitized or interpolated along an address range; Medium - interpolated within a Parcel; High - observed using GPS or survey instruments")
 	public PositionalAccuracy getLocationPositionalAccuracy() {
-		return match.getAddress().getLocationPositionalAccuracy();
+		return has(fields, ResultField.LOCATION_POSITIONAL_ACCURACY) ? locationPositionalAccuracy
+				: null;
 	}
 	
 	@ResultAttribute(index = 220, length = 25, description = "An explanation of what is represented by the location returned. Will be the same as was requested unless that is not available, in which case the closest available location will be returned. (e.g., accessPoint, frontDoorPoint, localityPoint, parcelPoint, provincePoint, rooftopPoint, routingPoint, streetPoint)")
 	public LocationDescriptor getLocationDescriptor() {
-		return match.getAddress().getLocationDescriptor();
+		return has(fields, ResultField.LOCATION_DESCRIPTOR) ? locationDescriptor : null;
 	}
 	
 	@ResultAttribute(index = 230, length = 36, description = "A unique identifier to identify the specific site.")
 	public String getSiteID() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getSiteID();
-		}
-		return deNullify(result);
+		return deNullify(siteID);
 	}
 	
 	@ResultAttribute(index = 240, length = 9, scale = 0, description = "A unique identifier for the street block. ")
 	public Integer getBlockID() {
-		Integer result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getStreetSegmentID();
-		}
-		return result;
+		return blockID;
 	}
 	
 	@ResultAttribute(index = 250, length = 36, description = "A unique identifier for this particular intersection.")
 	public String getIntersectionID() {
-		String result = null;
-		if(match instanceof IntersectionMatch) {
-			result = ((IntersectionMatch)match).getAddress().getID();
-		}
-		return deNullify(result);
+		return deNullify(intersectionID);
 	}
 	
 	@ResultAttribute(index = 260, description = "A full descripion of the site.")
 	public String getFullSiteDescriptor() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getFullSiteDescriptor();
-		}
-		return deNullify(result);
+		return deNullify(fullSiteDescriptor);
 	}
 	
 	@ResultAttribute(index = 270, description = "Directions to the site, including notes on accessibility.")
 	public String getAccessNotes() {
-		String result = null;
-		if(match instanceof AddressMatch) {
-			// intentionally outputting narrativeLocation as AccessNotes
-			result = ((AddressMatch)match).getAddress().getNarrativeLocation();
-		}
-		return deNullify(result);
+		return deNullify(accessNotes);
 	}
 	
 	@ResultAttribute(index = 290, description = "(e.g., proposed, active, retired)")
 	public PhysicalStatus getSiteStatus() {
-		PhysicalStatus result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getSiteStatus();
-		}
-		if(result == null) {
-			result = PhysicalStatus.ACTIVE;
-		}
-		return result;
+		return siteStatus;
 	}
 	
 	@ResultAttribute(index = 300, description = "The date the site was set to a state where it was no longer considered an active or reliable site.")
 	public LocalDate getSiteRetireDate() {
-		LocalDate result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getSiteRetireDate();
-		}
-		// if(result == null) {
-		// result = new Date(); // TODO end of time
-		// }
-		return result;
+		return siteRetireDate;
 	}
 	
 	@ResultAttribute(index = 310, description = "The date the site address was last changed")
 	public LocalDate getChangeDate() {
-		LocalDate result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getSiteChangeDate();
-		}
-		// if(result == null) {
-		// result = new Date(); // TODO end of time
-		// }
-		return result;
+		return changeDate;
 	}
 	
 	@ResultAttribute(index = 320, description = "true if this is the official address for site; false otherwise")
 	public Boolean getIsOfficial() {
-		if(match instanceof AddressMatch) {
-			return ((AddressMatch)match).getAddress().isPrimary();
-		}
-		return true;
+		return isOfficial;
 	}
 	
 	@ResultAttribute(index = 330, length = 2, scale = 0, description = "The number of road segments which meet at this intersection.")
 	public Integer getDegree() {
-		Integer result = null;
-		if(match instanceof IntersectionMatch) {
-			result = ((IntersectionMatch)match).getAddress().getDegree();
-		}
-		return result;
+		return degree;
 	}
 	
 	@ResultAttribute(index = 340, length = 9, scale = 3, description = "The time taken to execute the geocode for this request, in milliseconds (this value is duplicated for all results from one request)")
 	public BigDecimal getExecutionTime() {
-		return searchResults.getExecutionTime();
+		return executionTime;
 	}
 
 	@ResultAttribute(index = 350, length = 10, scale = 0, description = "Internal use.")
 	public Integer getSid() {
-		Integer result = null;
-		if(match instanceof AddressMatch) {
-			result = ((AddressMatch)match).getAddress().getSID();
+		return sid;
+	}
+	
+	@ResultAttribute(index = 355, length = 10, description = "When the request gives a previousSiteID or previousChangeDate, whether the matched site is UNCHANGED, CHANGED or RETIRED since then")
+	public ChangeStatus getChangeStatus() {
+		return changeStatus;
+	}
+	
+	/**
+	 * Compares this result to the result of the same request in a previous job, and sets its
+	 * change status.
+	 * 
+	 * @param previousSiteID the siteID of the previous result, or null if unknown
+	 * @param previousChangeDate the changeDate of the previous result, or null if unknown
+	 */
+	void compareToPrevious(String previousSiteID, LocalDate previousChangeDate) {
+		// requests that were not geocoded have no matchPrecision
+		if(timedOut || matchPrecision == null) {
+			return;
+		}
+		// active sites carry a retire date in the far future
+		if(siteRetireDate != null && !siteRetireDate.isAfter(LocalDate.now())) {
+			changeStatus = ChangeStatus.RETIRED;
+		} else if(previousSiteID != null && !previousSiteID.equals(siteID)) {
+			changeStatus = ChangeStatus.CHANGED;
+		} else if(previousChangeDate != null && changeDate != null
+				&& changeDate.isAfter(previousChangeDate)) {
+			changeStatus = ChangeStatus.CHANGED;
+		} else {
+			changeStatus = ChangeStatus.UNCHANGED;
 		}
-		return result;
+	}
+
+	@ResultAttribute(index = 356, length = 9, scale = 3, description = "With diagnostics, the time taken to parse and validate the request, in milliseconds (duplicated for all results from one request)")
+	public BigDecimal getResolveTime() {
+		return resolveTime;
+	}
+	
+	@ResultAttribute(index = 357, length = 9, scale = 3, description = "With diagnostics, the time taken to geocode the request or find its results in a cache, in milliseconds (duplicated for all results from one request)")
+	public BigDecimal getGeocodeTime() {
+		return geocodeTime;
+	}
+	
+	@ResultAttribute(index = 358, length = 4, scale = 0, description = "With diagnostics, the number of matches found for the request")
+	public Integer getCandidateCount() {
+		return candidateCount;
+	}
+	
+	@ResultAttribute(index = 359, length = 9, description = "With diagnostics, where the results came from: GEOCODED, CACHE (an earlier identical request), STORE (the persistent result store), DEDUP (a duplicate request in the same group) or TIMED_OUT (not geocoded within the time budget)")
+	public ResultSource getResultSource() {
+		return resultSource;
+	}
+	
+	/**
+	 * Sets the diagnostics of the request this result was returned for.
+	 * 
+	 * @param resolveNanos the time taken to parse and validate the request
+	 * @param geocodeNanos the time taken to geocode the request, or to find its results
+	 * @param candidateCount the number of matches found for the request
+	 * @param resultSource where the results came from
+	 */
+	void setDiagnostics(long resolveNanos, long geocodeNanos, int candidateCount,
+			ResultSource resultSource) {
+		this.resolveTime = BigDecimal.valueOf(resolveNanos / 1000, 3);
+		this.geocodeTime = BigDecimal.valueOf(geocodeNanos / 1000, 3);
+		this.candidateCount = candidateCount;
+		this.resultSource = resultSource;
+	}
+	
+	/**
+	 * Sets the execution time of a stored result to that of the request it is returned for.
+	 * 
+	 * @param executionTime the time taken to execute the request, in milliseconds
+	 */
+	void setExecutionTime(BigDecimal executionTime) {
+		this.executionTime = has(fields, ResultField.EXECUTION_TIME) ? executionTime : null;
+	}
+	
+	/**
+	 * Sets the result source of a result shared from another request, keeping its other
+	 * diagnostics.
+	 */
+	void setResultSource(ResultSource resultSource) {
+		this.resultSource = resultSource;
 	}
 
 	/*
@@ -363,27 +856,75 @@ public class AddressResult {
 	
 	public Map<String, Object> getCustomizationProperties() {
 		Map<String, Object> properties = new HashMap<String, Object>();
-		GeocoderAddress addr = null;
-		if(match instanceof AddressMatch) {
-			addr = ((AddressMatch)match).getAddress();
-		} else if(match instanceof IntersectionMatch) {
-			addr = ((IntersectionMatch)match).getAddress();
-		}
-		if(addr != null && config != null) {
+		if(hasAddress && kmlStylesUrl != null) {
 			properties.put("kmlStyleUrl",
-					config.getKmlStylesUrl() + "#geocoded_" + addr.getLocationDescriptor() + "_"
-							+ addr.getLocationPositionalAccuracy());
+					kmlStylesUrl + "#geocoded_" + locationDescriptor + "_"
+							+ locationPositionalAccuracy);
 		}
 		properties.put("kmlPlaceMarkNameAttribute", "fullAddress");
-		if(config != null) {
-			properties.put("kmlLookAtMinRange", config.getDefaultLookAtRange());
-			properties.put("kmlLookAtMaxRange", config.getDefaultLookAtRange());
+		if(lookAtRange != null) {
+			properties.put("kmlLookAtMinRange", lookAtRange);
+			properties.put("kmlLookAtMaxRange", lookAtRange);
 		}
-		properties.put("kmlSnippet", "Score: " + match.getScore() +
-				"  Precision: " + match.getPrecision());
+		properties.put("kmlSnippet", "Score: " + score +
+				"  Precision: " + matchPrecision);
 		return properties;
 	}
 	
+	private static void writeString(DataOutput out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if(s != null) {
+			out.writeUTF(s);
+		}
+	}
+	
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+	
+	private static void writeInteger(DataOutput out, Integer i) throws IOException {
+		out.writeBoolean(i != null);
+		if(i != null) {
+			out.writeInt(i);
+		}
+	}
+	
+	private static Integer readInteger(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readInt() : null;
+	}
+	
+	private static void writeBoolean(DataOutput out, Boolean b) throws IOException {
+		out.writeByte(b == null ? -1 : b ? 1 : 0);
+	}
+	
+	private static Boolean readBoolean(DataInput in) throws IOException {
+		byte b = in.readByte();
+		return b < 0 ? null : b == 1;
+	}
+	
+	private static <E extends Enum<E>> E readEnum(DataInput in, Class<E> type) throws IOException {
+		String name = readString(in);
+		return name == null ? null : Enum.valueOf(type, name);
+	}
+	
+	private static boolean has(Set<ResultField> fields, ResultField field) {
+		return fields == null || fields.contains(field);
+	}
+	
+	private static String intern(String s) {
+		if(s == null) {
+			return null;
+		}
+		int h = s.hashCode();
+		int i = (h ^ (h >>> 16)) & (INTERNED_SIZE - 1);
+		String interned = INTERNED[i];
+		if(s.equals(interned)) {
+			return interned;
+		}
+		INTERNED[i] = s;
+		return s;
+	}
+	
 	private String deNullify(String s) {
 		if(s == null) {
 			return "";
@@ -0,0 +1,68 @@
+package ca.bc.gov.ols.cpf;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import ca.bc.gov.ols.geocoder.api.data.GeocodeMatch;
+import ca.bc.gov.ols.geocoder.api.data.SearchResults;
+import ca.bc.gov.ols.geocoder.config.GeocoderConfig;
+
+/**
+ * AddressResultList is a read-only list that adapts each GeocodeMatch to an AddressResult only
+ * when it is read. Only the most recently built result is kept, as writers read the attributes
+ * of one element after another, so that a request with a very large number of matches holds its
+ * matches and a single result, rather than a result for every match.
+ */
+public class AddressResultList extends AbstractList<AddressResult> implements RandomAccess {
+	private final List<? extends GeocodeMatch> matches;
+	private final BigDecimal executionTime;
+	private final GeocoderConfig config;
+	private final String yourId;
+	private final Set<ResultField> fields;
+	private Built last;
+
+	public AddressResultList(SearchResults searchResults, GeocoderConfig config, String yourId) {
+		this(searchResults.getMatches(), searchResults.getExecutionTime(), config, yourId, null);
+	}
+
+	/**
+	 * @param matches the matches to adapt
+	 * @param executionTime the time taken to execute the request, in milliseconds
+	 * @param fields the fields to include in each result, or null for all fields
+	 */
+	public AddressResultList(List<? extends GeocodeMatch> matches, BigDecimal executionTime,
+			GeocoderConfig config, String yourId, Set<ResultField> fields) {
+		this.matches = matches;
+		this.executionTime = executionTime;
+		this.config = config;
+		this.yourId = yourId;
+		this.fields = fields;
+	}
+
+	@Override
+	public synchronized AddressResult get(int index) {
+		if(last == null || last.index != index) {
+			last = new Built(index,
+					new AddressResult(matches.get(index), executionTime, config, yourId, fields));
+		}
+		return last.result;
+	}
+
+	@Override
+	public int size() {
+		return matches.size();
+	}
+
+	private static class Built {
+		final int index;
+		final AddressResult result;
+
+		Built(int index, AddressResult result) {
+			this.index = index;
+			this.result = result;
+		}
+	}
+}
@@ -0,0 +1,350 @@
+package ca.bc.gov.ols.cpf;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BatchGeocoderRunner geocodes a CSV file from the command line, without CPF. It loads the
+ * plugin through the same Spring configuration as the CPF module, so requests are executed
+ * exactly as in a CPF job, and it runs fully offline against a file configuration store.
+ *
+ * The input is read as a stream of batches, each of which is geocoded by the module's
+ * GeocoderBatchExecutor, so that duplicate requests in a batch are only geocoded once. The
+ * number of batches in flight is bounded, so reading waits for the geocoder rather than
+ * buffering the whole file, and the results are written in input order as each batch completes.
+ * Progress and throughput are reported on standard error.
+ *
+ * <pre>
+ * Usage: BatchGeocoderRunner --input FILE [options]
+ *   --input FILE       CSV file of requests, with a header row of request parameter names
+ *                      (eg. addressString,yourId); other columns are ignored
+ *   --output FILE      the CSV file to write the results to (default: standard out)
+ *   --config URL       the file:// URL of a FileGeocoderConfigurationStore directory; without
+ *                      it, the dummy geocoder is used
+ *   --threads N        the number of geocoding threads (default: the number of processors)
+ *   --batch N          the number of requests in each batch (default 1000)
+ *   --param NAME=VALUE a job parameter applied to every request, eg. maxResults=3; may be
+ *                      repeated, and overrides the input column of the same name
+ *   --set BEAN.PROP=V  overrides a module configuration property, eg.
+ *                      geocodeResultCache.maxSize=0; may be repeated
+ *   --progress S       seconds between progress reports (default 10; 0 for none)
+ * </pre>
+ */
+public class BatchGeocoderRunner {
+	private String input;
+	private String output;
+	private String configUrl;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int batchSize = 1000;
+	private int progressSeconds = 10;
+	private final Map<String, String> params = new LinkedHashMap<String, String>();
+	private final Properties overrides = new Properties();
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	// resolved once, so each output cell is a direct getter call
+	private ResultField[] columns;
+
+	public static void main(String[] args) throws Exception {
+		BatchGeocoderRunner runner = new BatchGeocoderRunner();
+		try {
+			runner.parseArgs(args);
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: BatchGeocoderRunner --input FILE [--output FILE] [--config URL]"
+					+ " [--threads N] [--batch N] [--param NAME=VALUE]"
+					+ " [--set BEAN.PROP=VALUE] [--progress S]");
+			System.exit(2);
+		}
+		runner.run();
+	}
+
+	void parseArgs(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			if(i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + args[i]);
+			}
+			switch(args[i]) {
+				case "--input":
+					input = args[++i];
+					break;
+				case "--output":
+					output = args[++i];
+					break;
+				case "--config":
+					configUrl = args[++i];
+					break;
+				case "--threads":
+					threads = Integer.parseInt(args[++i]);
+					break;
+				case "--batch":
+					batchSize = Integer.parseInt(args[++i]);
+					break;
+				case "--param":
+					putPair(params, args[++i]);
+					break;
+				case "--set":
+					putPair(overrides, args[++i]);
+					break;
+				case "--progress":
+					progressSeconds = Integer.parseInt(args[++i]);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		if(input == null) {
+			throw new IllegalArgumentException("No --input file given");
+		}
+		for(String name : params.keySet()) {
+			if(!RequestParameterBinder.isParameter(name)) {
+				throw new IllegalArgumentException("Unknown request parameter: " + name);
+			}
+		}
+	}
+
+	private static void putPair(Map<? super String, ? super String> map, String pair) {
+		int eq = pair.indexOf('=');
+		if(eq <= 0) {
+			throw new IllegalArgumentException("Expected NAME=VALUE: " + pair);
+		}
+		map.put(pair.substring(0, eq).trim(), pair.substring(eq + 1));
+	}
+
+	public void run() throws IOException, InterruptedException, ExecutionException {
+		Properties contextOverrides = new Properties();
+		if(configUrl == null) {
+			contextOverrides.setProperty("geocoderFactory.dummyMode", "true");
+		} else {
+			contextOverrides.setProperty("geocoderFactory.configurationStore",
+					"ca.bc.gov.ols.geocoder.config.FileGeocoderConfigurationStore");
+			contextOverrides.setProperty("geocoderFactory.fileConfigurationUrl", configUrl);
+		}
+		// a one-off run gains nothing from warming up before its first request
+		contextOverrides.setProperty("geocoderWarmUp.enabled", "false");
+		contextOverrides.setProperty("geocoderBatchExecutor.parallelism", String.valueOf(threads));
+		contextOverrides.putAll(overrides);
+
+		long start = System.nanoTime();
+		ScheduledExecutorService reporter = null;
+		// two batches are geocoded at once, so that the geocoding threads are kept busy while the
+		// slowest requests of one batch complete
+		ExecutorService workers = Executors.newFixedThreadPool(2);
+		try(GeocoderPluginContext context = new GeocoderPluginContext(contextOverrides);
+				CsvReader reader = new CsvReader(
+						Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(output == null
+						? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+						: Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8))) {
+			GeocoderBatchExecutor executor = context.getBean("geocoderBatchExecutor",
+					GeocoderBatchExecutor.class);
+			if(progressSeconds > 0) {
+				reporter = Executors.newSingleThreadScheduledExecutor();
+				reporter.scheduleAtFixedRate(() -> report(start, false), progressSeconds,
+						progressSeconds, TimeUnit.SECONDS);
+			}
+			geocode(reader, out, executor, workers);
+		} finally {
+			workers.shutdownNow();
+			if(reporter != null) {
+				reporter.shutdownNow();
+			}
+		}
+		report(start, true);
+	}
+
+	/**
+	 * Geocodes the requests read from the CSV reader, writing their results to out in input
+	 * order.
+	 *
+	 * @param workers runs the geocoding of each batch
+	 */
+	void geocode(CsvReader reader, Writer out, GeocoderBatchExecutor executor,
+			ExecutorService workers) throws IOException, InterruptedException, ExecutionException {
+		columns = selectColumns();
+		List<String> header = reader.readRecord();
+		if(header == null) {
+			throw new IllegalArgumentException("No header row in " + input);
+		}
+		for(String name : header) {
+			if(!RequestParameterBinder.isParameter(name.trim())) {
+				System.err.println("Ignoring column " + name + ", which is not a request parameter");
+			}
+		}
+		writeHeader(out);
+
+		// at most four batches are read ahead, so memory is bounded by the batch size
+		int maxInFlight = 4;
+		ArrayDeque<Future<List<String>>> inFlight = new ArrayDeque<Future<List<String>>>();
+		long row = 0;
+		List<Map<String, String>> batch = new ArrayList<Map<String, String>>(batchSize);
+		for(List<String> record = reader.readRecord(); record != null; record = reader
+				.readRecord()) {
+			batch.add(toRequest(header, record));
+			if(batch.size() == batchSize) {
+				if(inFlight.size() >= maxInFlight) {
+					writeLines(out, inFlight.poll().get());
+				}
+				inFlight.add(submit(workers, executor, batch, row));
+				row += batch.size();
+				batch = new ArrayList<Map<String, String>>(batchSize);
+			}
+		}
+		if(!batch.isEmpty()) {
+			inFlight.add(submit(workers, executor, batch, row));
+		}
+		while(!inFlight.isEmpty()) {
+			writeLines(out, inFlight.poll().get());
+		}
+	}
+
+	private ResultField[] selectColumns() {
+		Set<ResultField> selected = ResultField.parseList(params.get("outputFields"));
+		if(selected == null) {
+			return ResultField.values();
+		}
+		if(Boolean.parseBoolean(params.get("diagnostics"))) {
+			// the diagnostic attributes are output whatever the outputFields
+			Set<ResultField> fields = EnumSet.noneOf(ResultField.class);
+			fields.addAll(selected);
+			fields.addAll(EnumSet.range(ResultField.RESOLVE_TIME, ResultField.RESULT_SOURCE));
+			selected = fields;
+		}
+		return selected.toArray(new ResultField[selected.size()]);
+	}
+
+	private Map<String, String> toRequest(List<String> header, List<String> record) {
+		Map<String, String> request = new HashMap<String, String>();
+		for(int i = 0; i < header.size() && i < record.size(); i++) {
+			String name = header.get(i).trim();
+			if(RequestParameterBinder.isParameter(name)) {
+				request.put(name, record.get(i));
+			}
+		}
+		request.putAll(params);
+		return request;
+	}
+
+	private Future<List<String>> submit(ExecutorService workers, GeocoderBatchExecutor executor,
+			List<Map<String, String>> batch, long firstRow) {
+		return workers.submit(() -> {
+			GeocoderPlugin[] plugins = new GeocoderPlugin[batch.size()];
+			String[] failures = new String[batch.size()];
+			List<GeocoderPlugin> valid = new ArrayList<GeocoderPlugin>(batch.size());
+			for(int i = 0; i < plugins.length; i++) {
+				try {
+					GeocoderPlugin plugin = executor.createPlugin();
+					RequestParameterBinder.bind(plugin, batch.get(i));
+					plugins[i] = plugin;
+					valid.add(plugin);
+				} catch(RuntimeException e) {
+					failures[i] = String.valueOf(e.getMessage());
+				}
+			}
+			try {
+				executor.executeAll(valid);
+			} catch(RuntimeException e) {
+				// each failed request, and each duplicate of it, has its own failure
+				for(int i = 0; i < plugins.length; i++) {
+					if(plugins[i] != null && plugins[i].getFailure() != null) {
+						failures[i] = String.valueOf(plugins[i].getFailure().getMessage());
+					}
+				}
+			}
+			List<String> lines = new ArrayList<String>(batch.size());
+			for(int i = 0; i < plugins.length; i++) {
+				long row = firstRow + i + 1;
+				if(failures[i] != null) {
+					errors.increment();
+					lines.add(formatError(row, failures[i]));
+				} else {
+					for(AddressResult result : plugins[i].getResults()) {
+						lines.add(formatResult(row, result));
+					}
+				}
+				requests.increment();
+			}
+			return lines;
+		});
+	}
+
+	private void writeHeader(Writer out) throws IOException {
+		StringBuilder sb = new StringBuilder("inputRow");
+		for(ResultField field : columns) {
+			sb.append(',').append(field.getAttributeName());
+		}
+		sb.append(",error\n");
+		out.write(sb.toString());
+	}
+
+	private String formatResult(long row, AddressResult result) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(row);
+		for(ResultField field : columns) {
+			sb.append(',');
+			Object value = field.getValue(result);
+			if(value != null) {
+				appendField(sb, value.toString());
+			}
+		}
+		sb.append(",\n");
+		return sb.toString();
+	}
+
+	private String formatError(long row, String message) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(row);
+		for(int i = 0; i < columns.length; i++) {
+			sb.append(',');
+		}
+		sb.append(',');
+		appendField(sb, message);
+		sb.append('\n');
+		return sb.toString();
+	}
+
+	static void appendField(StringBuilder sb, String value) {
+		if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+				&& value.indexOf('\r') < 0) {
+			sb.append(value);
+			return;
+		}
+		sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+	}
+
+	private static void writeLines(Writer out, List<String> lines) throws IOException {
+		for(String line : lines) {
+			out.write(line);
+		}
+	}
+
+	private void report(long start, boolean done) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long count = requests.sum();
+		System.err.println(String.format(Locale.ROOT, "%s %d requests (%d errors) in %.1f s, %.1f requests/s",
+				done ? "Geocoded" : "Progress:", count, errors.sum(), seconds,
+				seconds == 0 ? 0 : count / seconds));
+	}
+}
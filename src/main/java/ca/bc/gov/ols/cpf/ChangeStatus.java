@@ -0,0 +1,14 @@
+package ca.bc.gov.ols.cpf;
+
+/**
+ * ChangeStatus describes how a result compares to the result of the same request in a previous
+ * job, as given by the request's previousSiteID and previousChangeDate.
+ */
+public enum ChangeStatus {
+	/** the same site, not changed since the previous change date */
+	UNCHANGED,
+	/** a different site, or the same site changed since the previous change date */
+	CHANGED,
+	/** the site has been retired */
+	RETIRED
+}
@@ -0,0 +1,92 @@
+package ca.bc.gov.ols.cpf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CsvReader reads records from comma-separated text, as written by CPF and most spreadsheets:
+ * fields may be quoted with double quotes, in which case they may contain commas, line breaks and
+ * doubled quotes. Blank lines are skipped.
+ */
+public class CsvReader implements Closeable {
+	private final Reader in;
+	private final char[] buf = new char[8192];
+	private int pos;
+	private int len;
+
+	public CsvReader(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * @return the fields of the next record, or null at the end of the input
+	 * @throws IOException if the input cannot be read
+	 */
+	public List<String> readRecord() throws IOException {
+		int c = read();
+		while(c == '\n' || c == '\r') {
+			c = read();
+		}
+		if(c < 0) {
+			return null;
+		}
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		while(true) {
+			if(quoted) {
+				if(c < 0) {
+					throw new IOException("Unterminated quoted field");
+				} else if(c == '"') {
+					c = read();
+					if(c == '"') {
+						field.append('"');
+					} else {
+						quoted = false;
+						continue;
+					}
+				} else {
+					field.append((char)c);
+				}
+			} else if(c == '"' && field.length() == 0) {
+				quoted = true;
+			} else if(c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if(c == '\n' || c < 0) {
+				break;
+			} else if(c == '\r') {
+				c = read();
+				if(c != '\n' && c >= 0) {
+					pos--;
+				}
+				break;
+			} else {
+				field.append((char)c);
+			}
+			c = read();
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	private int read() throws IOException {
+		if(pos == len) {
+			len = in.read(buf, 0, buf.length);
+			pos = 0;
+			if(len <= 0) {
+				len = 0;
+				return -1;
+			}
+		}
+		return buf[pos++];
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,129 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DeadlineExecutor runs the geocoding step of each request on a separate thread, so that the
+ * request can give up waiting once its time budget is spent and free its CPF request slot. The
+ * geocoder cannot be interrupted, so a timed out geocode runs on to completion in the background
+ * and its result is discarded.
+ *
+ * The deadline is off unless a timeout is set, as each request then pays a handoff to another
+ * thread. The number of geocoding threads is bounded; when they are all busy, for example with
+ * timed out requests still running, further requests are run on the calling thread without a
+ * deadline rather than being queued, and are counted as fallbacks.
+ */
+public class DeadlineExecutor {
+	private final LongAdder fallbacks = new LongAdder();
+	private int timeoutMillis = 0;
+	private int maxThreads = 32;
+	private volatile ThreadPoolExecutor pool;
+
+	/**
+	 * @param timeoutMillis the time budget of each request's geocoding step; zero disables the
+	 *        deadline
+	 */
+	public void setTimeoutMillis(int timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public int getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * @return the number of requests run without a deadline because all of the geocoding threads
+	 *        were busy
+	 */
+	public long getFallbacks() {
+		return fallbacks.sum();
+	}
+
+	public void resetStatistics() {
+		fallbacks.reset();
+	}
+
+	/**
+	 * @param maxThreads the maximum number of geocoding threads, including those still running
+	 *        timed out requests
+	 */
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * Runs the task, waiting no longer than the time budget for it to complete.
+	 *
+	 * @param task the task to run
+	 * @return the result of the task
+	 * @throws TimeoutException if the task did not complete within the time budget
+	 */
+	public <T> T call(Callable<T> task) throws TimeoutException {
+		if(timeoutMillis <= 0) {
+			return callDirectly(task);
+		}
+		Future<T> future = getPool().submit(task);
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while geocoding", e);
+		} catch(ExecutionException e) {
+			throw rethrow(e.getCause());
+		}
+	}
+
+	public void shutdown() {
+		if(pool != null) {
+			pool.shutdownNow();
+			pool = null;
+		}
+	}
+
+	private ThreadPoolExecutor getPool() {
+		if(pool == null) {
+			synchronized(this) {
+				if(pool == null) {
+					AtomicInteger count = new AtomicInteger();
+					pool = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS,
+							new SynchronousQueue<Runnable>(), r -> {
+								Thread thread = new Thread(r,
+										"geocoder-deadline-" + count.incrementAndGet());
+								thread.setDaemon(true);
+								return thread;
+							}, (r, executor) -> {
+								fallbacks.increment();
+								r.run();
+							});
+				}
+			}
+		}
+		return pool;
+	}
+
+	private static <T> T callDirectly(Callable<T> task) {
+		try {
+			return task.call();
+		} catch(Exception e) {
+			throw rethrow(e);
+		}
+	}
+
+	private static RuntimeException rethrow(Throwable t) {
+		if(t instanceof RuntimeException) {
+			return (RuntimeException)t;
+		}
+		if(t instanceof Error) {
+			throw (Error)t;
+		}
+		return new IllegalStateException(t);
+	}
+}
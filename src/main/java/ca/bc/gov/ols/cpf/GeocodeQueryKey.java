@@ -0,0 +1,138 @@
+package ca.bc.gov.ols.cpf;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * GeocodeQueryKey identifies a geocode request by its normalized address fields together with
+ * every parameter that affects the results, so that requests with equal keys can share results.
+ *
+ * The yourId value is deliberately not part of the key; it is applied to each result separately.
+ */
+public final class GeocodeQueryKey {
+	private final Object[] values;
+	private final int hash;
+
+	public GeocodeQueryKey(Object... values) {
+		this.values = values;
+		this.hash = Arrays.deepHashCode(values);
+	}
+
+	/**
+	 * Normalizes an address field for comparison purposes: leading and trailing whitespace is
+	 * removed, internal runs of whitespace are collapsed to a single space, and the result is
+	 * lowercased. Null values are treated as empty.
+	 *
+	 * @param s the string to normalize
+	 * @return the normalized string, never null
+	 */
+	public static String normalize(String s) {
+		if(s == null) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(s.length());
+		boolean pendingSpace = false;
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(Character.isWhitespace(c)) {
+				pendingSpace = sb.length() > 0;
+			} else {
+				if(pendingSpace) {
+					sb.append(' ');
+					pendingSpace = false;
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns an address field exactly as given, for requests whose results echo their input, so
+	 * that requests differing only in case or spacing do not share each other's echoed values.
+	 * Null values are treated as empty.
+	 *
+	 * @param s the string
+	 * @return the string, or empty if it is null
+	 */
+	public static String exact(String s) {
+		return s == null ? "" : s;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if(this == other) {
+			return true;
+		}
+		if(!(other instanceof GeocodeQueryKey)) {
+			return false;
+		}
+		GeocodeQueryKey o = (GeocodeQueryKey)other;
+		return hash == o.hash && Arrays.deepEquals(values, o.values);
+	}
+
+	/**
+	 * Writes an unambiguous encoding of the key, in which every value is tagged with its kind
+	 * and every string and array is prefixed with its length, so that different keys never have
+	 * the same encoding (as "a, b" and "c" would with "a" and "b, c" in the toString() form).
+	 *
+	 * @param out the output to write to
+	 * @throws IOException if the output cannot be written
+	 */
+	public void encode(DataOutput out) throws IOException {
+		encodeArray(out, values);
+	}
+
+	private static void encodeArray(DataOutput out, Object[] array) throws IOException {
+		out.writeInt(array.length);
+		for(Object value : array) {
+			encodeValue(out, value);
+		}
+	}
+
+	private static void encodeValue(DataOutput out, Object value) throws IOException {
+		if(value == null) {
+			out.writeByte(0);
+		} else if(value instanceof GeocodeQueryKey) {
+			out.writeByte(1);
+			((GeocodeQueryKey)value).encode(out);
+		} else if(value instanceof Object[]) {
+			out.writeByte(2);
+			encodeArray(out, (Object[])value);
+		} else if(value instanceof double[]) {
+			double[] array = (double[])value;
+			out.writeByte(3);
+			out.writeInt(array.length);
+			for(double d : array) {
+				out.writeDouble(d);
+			}
+		} else if(value instanceof Collection) {
+			out.writeByte(4);
+			encodeArray(out, ((Collection<?>)value).toArray());
+		} else {
+			// strings, numbers, booleans and enums, tagged with their class so that eg. 1 and "1"
+			// differ
+			byte[] cls = value.getClass().getName().getBytes(StandardCharsets.UTF_8);
+			byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+			out.writeByte(5);
+			out.writeInt(cls.length);
+			out.write(cls);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.deepToString(values);
+	}
+}
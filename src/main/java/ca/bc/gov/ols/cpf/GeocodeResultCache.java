@@ -0,0 +1,196 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.bc.gov.ols.geocoder.api.data.GeocodeMatch;
+
+/**
+ * GeocodeResultCache is a size-bounded, least-recently-used cache of geocoder matches shared by
+ * all of the plugin instances in the module. It is split into independently locked segments so
+ * that concurrent requests rarely contend with each other. Only the matches are cached; the
+ * execution time and other per-request values are set by each request that reads them.
+ *
+ * The cache keys include the dataset version of the geocoder the results were computed with, and
+ * the cache is cleared the first time a newer version is seen, so that requests still draining
+ * on the old dataset during a hot swap do not repeatedly clear it.
+ */
+public class GeocodeResultCache {
+	private static final Logger logger = LoggerFactory.getLogger(GeocodeResultCache.class);
+
+	private static final int SEGMENT_COUNT = 16;
+
+	private int maxSize = 50000;
+	private int maxCachedMatches = 10;
+
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+	private volatile long version;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public GeocodeResultCache() {
+		for(int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * @param maxSize the maximum total number of cached queries; zero disables the cache
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @param maxCachedMatches results with more matches than this are not cached
+	 */
+	public void setMaxCachedMatches(int maxCachedMatches) {
+		this.maxCachedMatches = maxCachedMatches;
+	}
+
+	public int getMaxCachedMatches() {
+		return maxCachedMatches;
+	}
+
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Clears the cache the first time a newer dataset version is seen; results for older
+	 * versions are keyed by their version, so are never returned for a newer one.
+	 *
+	 * @param currentVersion the dataset version that the next request will be executed against
+	 */
+	public void checkVersion(long currentVersion) {
+		if(currentVersion > version) {
+			synchronized(this) {
+				if(currentVersion > version) {
+					if(version != 0) {
+						logger.info("Geocoder dataset version changed; clearing result cache");
+					}
+					clear();
+					version = currentVersion;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the cached matches of the query, or null if it is not cached
+	 */
+	public List<GeocodeMatch> get(GeocodeQueryKey key) {
+		if(!isEnabled()) {
+			return null;
+		}
+		List<GeocodeMatch> matches = segmentFor(key).get(key);
+		if(matches == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return matches;
+	}
+
+	public void put(GeocodeQueryKey key, List<? extends GeocodeMatch> matches) {
+		if(!isEnabled() || matches.size() > maxCachedMatches) {
+			return;
+		}
+		segmentFor(key).put(key, Collections.unmodifiableList(new ArrayList<GeocodeMatch>(matches)));
+	}
+
+	@PreDestroy
+	public void clear() {
+		for(Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * Resets the hit, miss and eviction counts, keeping the cached results.
+	 */
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public int getSize() {
+		int size = 0;
+		for(Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "GeocodeResultCache[size=" + getSize() + ", hits=" + getHits() + ", misses="
+				+ getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	private Segment segmentFor(GeocodeQueryKey key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (SEGMENT_COUNT - 1)];
+	}
+
+	private class Segment {
+		private final LinkedHashMap<GeocodeQueryKey, List<GeocodeMatch>> map = new LinkedHashMap<GeocodeQueryKey, List<GeocodeMatch>>(
+				16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<GeocodeQueryKey, List<GeocodeMatch>> eldest) {
+				if(size() > Math.max(1, maxSize / SEGMENT_COUNT)) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+
+		synchronized List<GeocodeMatch> get(GeocodeQueryKey key) {
+			return map.get(key);
+		}
+
+		synchronized void put(GeocodeQueryKey key, List<GeocodeMatch> matches) {
+			map.put(key, matches);
+		}
+
+		synchronized void clear() {
+			map.clear();
+		}
+
+		synchronized int size() {
+			return map.size();
+		}
+	}
+}
@@ -0,0 +1,510 @@
+package ca.bc.gov.ols.cpf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.bc.gov.ols.geocoder.config.GeocoderConfig;
+
+/**
+ * GeocodeResultStore is an optional persistent store of request results, kept in a local file so
+ * that the results of repeated queries are reused by later jobs, even after the module restarts.
+ *
+ * The file is an append-only log of records, each holding a digest of the request's result key
+ * and its serialized results; an in-memory index of the record offsets is rebuilt by scanning
+ * the file when it is opened. Concurrent requests each reserve their own range at the end of the
+ * file and write to it in parallel; only compaction, when the file grows past the maximum size,
+ * excludes them, keeping only the most recently written records that fit in half of the maximum
+ * size.
+ *
+ * While the module is running, the store is emptied whenever a request runs against a geocoder
+ * with a new dataset version from the GeocoderHolder, as the result cache is. The geocoder has
+ * no dataset identifier that lasts across restarts, so the file header records the configured
+ * dataset version, which must be set for the store to be used; the store is emptied when it is
+ * opened with a different one.
+ */
+public class GeocodeResultStore {
+	private static final Logger logger = LoggerFactory.getLogger(GeocodeResultStore.class);
+
+	private static final String MAGIC = "ols-geocoder-cpf-results-3";
+	private static final String FILE_NAME = "geocode-results.dat";
+	private static final int DIGEST_LENGTH = 16;
+
+	private String directory = "";
+	private String datasetVersion = "";
+	private long maxBytes = 1L << 30;
+	private int maxStoredMatches = 10;
+
+	// held for reading by every get and put, and for writing to replace or empty the file
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	// the offset of the record for each key digest
+	private final ConcurrentHashMap<String, Long> index = new ConcurrentHashMap<String, Long>();
+	// the offset at which the next record is written
+	private final AtomicLong end = new AtomicLong();
+	private Path path;
+	private volatile FileChannel channel;
+	private long headerLength;
+	private volatile long version;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+
+	/**
+	 * @param directory the directory to keep the store file in; empty disables the store
+	 */
+	public void setDirectory(String directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @param datasetVersion an identifier of the loaded dataset, eg. its release date; stored
+	 *        results are discarded when it changes. Required; the store is not used without it.
+	 */
+	public void setDatasetVersion(String datasetVersion) {
+		this.datasetVersion = datasetVersion;
+	}
+
+	/**
+	 * @param maxBytes the size at which the store file is compacted
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param maxStoredMatches results with more matches than this are not stored
+	 */
+	public void setMaxStoredMatches(int maxStoredMatches) {
+		this.maxStoredMatches = maxStoredMatches;
+	}
+
+	public boolean isEnabled() {
+		return channel != null;
+	}
+
+	/**
+	 * Opens the store file, discarding it if it was written for a different dataset version.
+	 */
+	public void open() {
+		if(directory == null || directory.isEmpty()) {
+			return;
+		}
+		if(datasetVersion == null || datasetVersion.isEmpty()) {
+			logger.error("No datasetVersion is set for the geocode result store in " + directory
+					+ ", so stored results could not be told apart from those of another dataset;"
+					+ " continuing without it");
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			path = Paths.get(directory, FILE_NAME);
+			Files.createDirectories(path.getParent());
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			if(!readHeader()) {
+				logger.info("Starting a new geocode result store for dataset version {}",
+						getStoreVersion());
+				reset();
+			} else {
+				scan();
+				logger.info("Opened geocode result store with {} stored queries", index.size());
+			}
+		} catch(IOException e) {
+			logger.error("Unable to open geocode result store in " + directory
+					+ "; continuing without it", e);
+			closeChannel();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			closeChannel();
+			index.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Empties the store the first time a reloaded geocoder's dataset version is seen.
+	 *
+	 * @param currentVersion the dataset version from the GeocoderHolder of the geocoder that the
+	 *        next request will be executed against
+	 */
+	public void checkVersion(long currentVersion) {
+		if(currentVersion > version) {
+			lock.writeLock().lock();
+			try {
+				if(currentVersion > version) {
+					// the first version seen is the dataset the store was opened for
+					if(version != 0 && channel != null) {
+						logger.info("Geocoder dataset reloaded; emptying geocode result store");
+						reset();
+					}
+					version = currentVersion;
+				}
+			} catch(IOException e) {
+				logger.error("Unable to empty geocode result store; continuing without it", e);
+				closeChannel();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * @param key the query key of the request
+	 * @param yourId the yourId of the request
+	 * @return the stored results for the key, or null if there are none
+	 */
+	public List<AddressResult> get(GeocodeQueryKey key, String yourId) {
+		String digest = digest(key);
+		lock.readLock().lock();
+		try {
+			Long offset = index.get(digest);
+			if(offset == null || channel == null) {
+				misses.increment();
+				return null;
+			}
+			ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+			readFully(lengthBuffer, offset + DIGEST_LENGTH);
+			ByteBuffer data = ByteBuffer.allocate(lengthBuffer.getInt(0));
+			readFully(data, offset + DIGEST_LENGTH + 4);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data.array()));
+			int count = in.readInt();
+			List<AddressResult> results = new ArrayList<AddressResult>(count);
+			for(int i = 0; i < count; i++) {
+				results.add(AddressResult.readFrom(in, yourId));
+			}
+			hits.increment();
+			return results;
+		} catch(IOException | RuntimeException e) {
+			logger.warn("Unable to read stored results for " + key, e);
+			misses.increment();
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the results of a request to the store, unless they are already stored or have too
+	 * many matches.
+	 *
+	 * @param key the result key of the request
+	 * @param results the results of the request
+	 */
+	public void put(GeocodeQueryKey key, List<AddressResult> results) {
+		if(channel == null || results.size() > maxStoredMatches) {
+			return;
+		}
+		String digest = digest(key);
+		if(index.containsKey(digest)) {
+			return;
+		}
+		byte[] record;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * (results.size() + 1));
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.write(digest.getBytes(StandardCharsets.ISO_8859_1));
+			out.writeInt(0);
+			out.writeInt(results.size());
+			for(AddressResult result : results) {
+				result.writeTo(out);
+			}
+			out.flush();
+			record = bytes.toByteArray();
+		} catch(IOException e) {
+			// cannot happen when writing to a byte array
+			throw new IllegalStateException(e);
+		}
+		ByteBuffer.wrap(record).putInt(DIGEST_LENGTH, record.length - DIGEST_LENGTH - 4);
+		boolean full;
+		lock.readLock().lock();
+		try {
+			if(channel == null || index.containsKey(digest)) {
+				return;
+			}
+			long offset = end.getAndAdd(record.length);
+			writeFully(ByteBuffer.wrap(record), offset);
+			// only indexed once written, so that readers never see a partly written record
+			index.putIfAbsent(digest, offset);
+			writes.increment();
+			full = offset + record.length > maxBytes;
+		} catch(IOException e) {
+			lock.readLock().unlock();
+			fail("Unable to write to geocode result store; continuing without it", e);
+			return;
+		}
+		lock.readLock().unlock();
+		if(full) {
+			lock.writeLock().lock();
+			try {
+				if(channel != null && end.get() > maxBytes) {
+					compact();
+				}
+			} catch(IOException e) {
+				logger.error("Unable to compact geocode result store; continuing without it", e);
+				closeChannel();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	private void fail(String message, IOException e) {
+		lock.writeLock().lock();
+		try {
+			logger.error(message, e);
+			closeChannel();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Resets the hit, miss and write counts, keeping the stored results.
+	 */
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		writes.reset();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getWrites() {
+		return writes.sum();
+	}
+
+	public int getSize() {
+		return index.size();
+	}
+
+	/**
+	 * @return the size of the store file, in bytes
+	 */
+	public long getBytes() {
+		lock.readLock().lock();
+		try {
+			return channel == null ? 0 : channel.size();
+		} catch(IOException e) {
+			return 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Rewrites the file with only the newest records that fit in half of the maximum size. If
+	 * the compacted file cannot replace the old one, the old one is left open and the exception
+	 * is thrown, so that the caller disables the store.
+	 */
+	private void compact() throws IOException {
+		long start = System.nanoTime();
+		List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(
+				index.entrySet());
+		// in the order they were written
+		entries.sort(Comparator.comparing(Map.Entry::getValue));
+		// find the oldest record to keep, walking back from the newest
+		long budget = maxBytes / 2 - headerLength;
+		int first = entries.size();
+		while(first > 0) {
+			long length = recordLength(entries.get(first - 1).getValue());
+			if(length > budget) {
+				break;
+			}
+			budget -= length;
+			first--;
+		}
+		Path compacted = path.resolveSibling(FILE_NAME + ".compact");
+		Map<String, Long> newIndex = new HashMap<String, Long>();
+		long compactedEnd;
+		try(FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			out.write(header());
+			for(int i = first; i < entries.size(); i++) {
+				long offset = entries.get(i).getValue();
+				long length = recordLength(offset);
+				newIndex.put(entries.get(i).getKey(), out.position());
+				while(length > 0) {
+					long transferred = channel.transferTo(offset, length, out);
+					offset += transferred;
+					length -= transferred;
+				}
+			}
+			out.force(true);
+			compactedEnd = out.position();
+		}
+		// the old file stays open until the compacted one has replaced it, so that a failure
+		// leaves it to be closed by the caller rather than half replaced
+		try {
+			Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException e) {
+			Files.deleteIfExists(compacted);
+			throw e;
+		}
+		FileChannel reopened = FileChannel.open(path, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		FileChannel old = channel;
+		channel = reopened;
+		end.set(compactedEnd);
+		index.clear();
+		index.putAll(newIndex);
+		try {
+			old.close();
+		} catch(IOException e) {
+			logger.warn("Unable to close the uncompacted geocode result store", e);
+		}
+		logger.info("Compacted geocode result store from {} to {} queries in {} ms",
+				entries.size(), newIndex.size(), (System.nanoTime() - start) / 1000000);
+	}
+
+	private long recordLength(long offset) throws IOException {
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		readFully(lengthBuffer, offset + DIGEST_LENGTH);
+		return DIGEST_LENGTH + 4 + lengthBuffer.getInt(0);
+	}
+
+	/**
+	 * Rebuilds the index from the records in the file, truncating any partly written record at
+	 * the end.
+	 */
+	private void scan() throws IOException {
+		index.clear();
+		long size = channel.size();
+		long offset = headerLength;
+		ByteBuffer head = ByteBuffer.allocate(DIGEST_LENGTH + 4);
+		while(offset + head.capacity() <= size) {
+			head.clear();
+			readFully(head, offset);
+			int length = head.getInt(DIGEST_LENGTH);
+			// every record holds at least its result count; a zero length is a range reserved
+			// by a write that did not complete
+			if(length < 4 || offset + head.capacity() + length > size) {
+				break;
+			}
+			String digest = new String(head.array(), 0, DIGEST_LENGTH, StandardCharsets.ISO_8859_1);
+			index.put(digest, offset);
+			offset += head.capacity() + length;
+		}
+		if(offset < size) {
+			logger.warn("Truncating incomplete records at the end of the geocode result store");
+			channel.truncate(offset);
+		}
+		end.set(offset);
+	}
+
+	private boolean readHeader() throws IOException {
+		ByteBuffer expected = header();
+		if(channel.size() < expected.remaining()) {
+			return false;
+		}
+		ByteBuffer actual = ByteBuffer.allocate(expected.remaining());
+		readFully(actual, 0);
+		actual.flip();
+		headerLength = expected.remaining();
+		return actual.equals(expected);
+	}
+
+	private void reset() throws IOException {
+		channel.truncate(0);
+		ByteBuffer header = header();
+		headerLength = header.remaining();
+		writeFully(header, 0);
+		index.clear();
+		end.set(headerLength);
+	}
+
+	private ByteBuffer header() {
+		byte[] bytes = (MAGIC + "\n" + getStoreVersion() + "\n").getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length);
+		buffer.putInt(bytes.length).put(bytes).flip();
+		return buffer;
+	}
+
+	private String getStoreVersion() {
+		return GeocoderConfig.VERSION + "/" + datasetVersion;
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if(read < 0) {
+				throw new IOException("Unexpected end of geocode result store");
+			}
+			position += read;
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private void closeChannel() {
+		if(channel != null) {
+			try {
+				channel.close();
+			} catch(IOException e) {
+				logger.warn("Unable to close geocode result store", e);
+			}
+			channel = null;
+		}
+	}
+
+	/**
+	 * @return a fixed length digest of the key's encoding, as a string of one character per byte
+	 */
+	static String digest(GeocodeQueryKey key) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			try(DataOutputStream out = new DataOutputStream(
+					new DigestOutputStream(OutputStream.nullOutputStream(), md))) {
+				key.encode(out);
+			}
+			return new String(md.digest(), 0, DIGEST_LENGTH, StandardCharsets.ISO_8859_1);
+		} catch(NoSuchAlgorithmException | IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
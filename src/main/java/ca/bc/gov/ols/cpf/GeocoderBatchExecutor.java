@@ -0,0 +1,160 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
+
+/**
+ * GeocoderBatchExecutor geocodes a whole group of requests at once, spreading them across a
+ * shared ForkJoinPool so that a slow address does not hold up the rest of the group. The results
+ * are always returned in the same order as the requests.
+ *
+ * Each request is executed by its own GeocoderPlugin instance, obtained from the plugin factory
+ * so that it is wired exactly as the plugin instances created by CPF are. CPF itself executes
+ * each request on its own plugin instance and never calls this class, so it is only used by
+ * offline tools such as the BatchGeocoderRunner.
+ * 
+ * Requests in a group with the same result key (the same address, once normalized, and the same
+ * parameters and output fields) are only geocoded once, and the results are copied to the duplicates with their own
+ * yourId values.
+ */
+public class GeocoderBatchExecutor {
+	private static final Logger logger = LoggerFactory.getLogger(GeocoderBatchExecutor.class);
+	
+	private ObjectFactory<GeocoderPlugin> pluginFactory;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private volatile ForkJoinPool pool;
+
+	public void setPluginFactory(ObjectFactory<GeocoderPlugin> pluginFactory) {
+		this.pluginFactory = pluginFactory;
+	}
+
+	/**
+	 * @param parallelism the number of threads used to execute requests; defaults to the number of
+	 *        available processors
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @return a new plugin instance, wired in the same way as those CPF creates
+	 */
+	public GeocoderPlugin createPlugin() {
+		return pluginFactory.getObject();
+	}
+
+	/**
+	 * Geocodes a group of request records, each given as a map of request parameter values.
+	 *
+	 * @param requests the request records
+	 * @return the list of results for each request, in the same order as the requests
+	 */
+	public List<List<AddressResult>> geocodeAll(List<? extends Map<String, ?>> requests) {
+		List<GeocoderPlugin> plugins = new ArrayList<GeocoderPlugin>(requests.size());
+		for(Map<String, ?> request : requests) {
+			GeocoderPlugin plugin = createPlugin();
+			RequestParameterBinder.bind(plugin, request);
+			plugins.add(plugin);
+		}
+		executeAll(plugins);
+		List<List<AddressResult>> results = new ArrayList<List<AddressResult>>(plugins.size());
+		for(GeocoderPlugin plugin : plugins) {
+			results.add(plugin.getResults());
+		}
+		return results;
+	}
+
+	/**
+	 * Executes a group of plugin instances that have already had their parameters set, returning
+	 * once all of them have completed. Each request that fails, and each duplicate of it, is left
+	 * without results and with the failure as its getFailure(); the first failure is then thrown,
+	 * with any further failures suppressed.
+	 *
+	 * @param plugins the plugin instances to execute
+	 * @return the number of duplicate requests that were not geocoded separately
+	 */
+	public int executeAll(List<? extends GeocoderPlugin> plugins) {
+		Map<GeocodeQueryKey, GeocoderPlugin> distinct = new LinkedHashMap<GeocodeQueryKey, GeocoderPlugin>();
+		List<GeocoderPlugin> duplicates = new ArrayList<GeocoderPlugin>();
+		List<GeocoderPlugin> sources = new ArrayList<GeocoderPlugin>();
+		for(GeocoderPlugin plugin : plugins) {
+			GeocoderPlugin source = distinct.putIfAbsent(plugin.getResultKey(), plugin);
+			if(source != null) {
+				duplicates.add(plugin);
+				sources.add(source);
+			}
+		}
+		
+		ForkJoinPool pool = getPool();
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(distinct.size());
+		for(GeocoderPlugin plugin : distinct.values()) {
+			tasks.add(pool.submit(plugin::execute));
+		}
+		RuntimeException failure = null;
+		int i = 0;
+		for(GeocoderPlugin plugin : distinct.values()) {
+			try {
+				tasks.get(i++).join();
+			} catch(RuntimeException thrown) {
+				RuntimeException e = unwrap(thrown);
+				plugin.setFailure(e);
+				if(failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		for(int d = 0; d < duplicates.size(); d++) {
+			duplicates.get(d).shareResults(sources.get(d));
+		}
+		if(failure != null) {
+			throw failure;
+		}
+		logger.debug("Geocoded group of {} requests; collapsed {} duplicates", plugins.size(),
+				duplicates.size());
+		return duplicates.size();
+	}
+
+	/**
+	 * @return the exception thrown by the plugin; join() rethrows a copy of it, made on the
+	 *         joining thread, with the original as its cause
+	 */
+	private static RuntimeException unwrap(RuntimeException e) {
+		Throwable cause = e.getCause();
+		if(cause != null && cause.getClass() == e.getClass()) {
+			return (RuntimeException)cause;
+		}
+		return e;
+	}
+
+	private ForkJoinPool getPool() {
+		if(pool == null) {
+			synchronized(this) {
+				if(pool == null) {
+					pool = new ForkJoinPool(parallelism);
+				}
+			}
+		}
+		return pool;
+	}
+
+	public void shutdown() {
+		if(pool != null) {
+			pool.shutdownNow();
+			pool = null;
+		}
+	}
+}
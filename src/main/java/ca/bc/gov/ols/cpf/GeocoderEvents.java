@@ -0,0 +1,73 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.List;
+
+import ca.bc.gov.ols.geocoder.api.data.GeocodeMatch;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * GeocoderEvents are the Java Flight Recorder events for the stages of a request, so that a
+ * recording shows which inputs and stages cost time and allocation, rather than anonymous stack
+ * samples inside CPF. Events are only filled in and committed when a recording has enabled them;
+ * otherwise each costs a check of the event's enabled flag.
+ */
+public final class GeocoderEvents {
+	private GeocoderEvents() {
+	}
+
+	@Category({"OLS Geocoder", "Request"})
+	public abstract static class StageEvent extends Event {
+		@Label("Address Length")
+		@Description("The length of the request's addressString")
+		int addressLength;
+
+		@Label("Match Count")
+		int matchCount;
+
+		@Label("Top Match Precision")
+		@Description("The match precision of the first match")
+		String topMatchPrecision;
+
+		/**
+		 * Ends the event and commits it, if it is enabled and over its threshold.
+		 *
+		 * @param addressString the request's addressString, or null
+		 * @param matches the matches of the request, or null if not yet known
+		 */
+		void commit(String addressString, List<? extends GeocodeMatch> matches) {
+			end();
+			if(shouldCommit()) {
+				addressLength = addressString == null ? 0 : addressString.length();
+				if(matches != null) {
+					matchCount = matches.size();
+					if(!matches.isEmpty() && matches.get(0).getPrecision() != null) {
+						topMatchPrecision = matches.get(0).getPrecision().name();
+					}
+				}
+				commit();
+			}
+		}
+	}
+
+	@Name("ca.bc.gov.ols.cpf.Resolve")
+	@Label("Resolve and Validate")
+	@Description("Resolving and validating the query's parameters")
+	public static class Resolve extends StageEvent {
+	}
+
+	@Name("ca.bc.gov.ols.cpf.Geocode")
+	@Label("Geocode")
+	@Description("Geocoding the query, or finding its results in the result cache")
+	public static class Geocode extends StageEvent {
+	}
+
+	@Name("ca.bc.gov.ols.cpf.Adapt")
+	@Label("Adapt Results")
+	@Description("Creating the AddressResults from the geocoder's matches")
+	public static class Adapt extends StageEvent {
+	}
+}
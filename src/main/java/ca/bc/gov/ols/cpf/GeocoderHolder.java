@@ -0,0 +1,427 @@
+package ca.bc.gov.ols.cpf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.lang.ref.WeakReference;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.bc.gov.ols.geocoder.GeocoderFactory;
+import ca.bc.gov.ols.geocoder.IGeocoder;
+
+/**
+ * GeocoderHolder holds the geocoder that requests are executed against, and replaces it with a
+ * newly built one without stopping the module. The new geocoder is built in the background while
+ * requests continue against the current one, and is swapped in atomically; requests already
+ * holding a lease on the old geocoder finish with it, and it is released once they have all
+ * closed their leases.
+ *
+ * Each geocoder loaded is given a new version, which is used to keep results from different
+ * geocoders apart in the result cache. Geocoders are loaded one at a time, on their own thread.
+ *
+ * A reload is started by the reload() operation of the "ca.bc.gov.ols.cpf:type=GeocoderHolder"
+ * MBean (with an "instance" key unique to the plugin context), or by touching the reload file, if
+ * one is configured.
+ *
+ * If a snapshot of the configuration is enabled, the module does not wait on a slow or
+ * unreachable primary configuration store (eg. Cassandra) to start: the geocoder is first loaded
+ * from the snapshot factory, and then from the primary store in the background, to be swapped in
+ * once it completes. A primary load that fails, or is still running after the primary timeout
+ * and fails once interrupted, is retried every pollSeconds. If the snapshot cannot be loaded,
+ * the geocoder is loaded from the primary store before the module starts, as without a snapshot. As the snapshot is an export of the
+ * primary configuration, the primary geocoder keeps the snapshot's dataset version, so the
+ * persistent result store is not emptied when it is swapped in.
+ */
+public class GeocoderHolder implements GeocoderHolderMXBean {
+	private static final Logger logger = LoggerFactory.getLogger(GeocoderHolder.class);
+
+	public static final String OBJECT_NAME = "ca.bc.gov.ols.cpf:type=GeocoderHolder";
+
+	// versions are unique across all holders, so that caches are never shared between datasets
+	private static final AtomicLong VERSIONS = new AtomicLong();
+
+	// the holders of fixed geocoders, so that each geocoder keeps a single version
+	private static final Map<IGeocoder, WeakReference<GeocoderHolder>> FIXED = new WeakHashMap<IGeocoder, WeakReference<GeocoderHolder>>();
+
+	public static final String PRIMARY = "primary";
+	public static final String SNAPSHOT = "snapshot";
+
+	private GeocoderFactory geocoderFactory;
+	private GeocoderFactory snapshotGeocoderFactory;
+	private boolean snapshotEnabled;
+	private int primaryTimeoutSeconds = 600;
+	private GeocoderMetrics metrics;
+	private String reloadFile = "";
+	private int pollSeconds = 60;
+	private volatile String configurationSource = PRIMARY;
+
+	private final AtomicReference<Generation> current = new AtomicReference<Generation>();
+	private final AtomicInteger retiring = new AtomicInteger();
+	private final AtomicBoolean reloading = new AtomicBoolean();
+	private ScheduledExecutorService executor;
+	// loads the geocoders, so that a hung load does not stop the reload file polling
+	private ExecutorService loader;
+	private FileTime reloadFileTime;
+	private ObjectName objectName;
+
+	public GeocoderHolder() {
+	}
+
+	private GeocoderHolder(IGeocoder geocoder) {
+		current.set(new Generation(geocoder));
+	}
+
+	/**
+	 * Returns the holder for a fixed geocoder, which cannot be reloaded. The same holder, and so
+	 * the same dataset version, is returned for as long as it is in use, so that the plugins
+	 * given the same geocoder share their cached results rather than clearing each other's.
+	 *
+	 * @param geocoder the geocoder
+	 * @return the holder of the geocoder
+	 */
+	public static GeocoderHolder fixed(IGeocoder geocoder) {
+		synchronized(FIXED) {
+			WeakReference<GeocoderHolder> ref = FIXED.get(geocoder);
+			GeocoderHolder holder = ref == null ? null : ref.get();
+			if(holder == null) {
+				holder = new GeocoderHolder(geocoder);
+				FIXED.put(geocoder, new WeakReference<GeocoderHolder>(holder));
+			}
+			return holder;
+		}
+	}
+
+	public void setGeocoderFactory(GeocoderFactory geocoderFactory) {
+		this.geocoderFactory = geocoderFactory;
+	}
+
+	/**
+	 * @param snapshotGeocoderFactory a factory reading a local snapshot of the configuration,
+	 *        eg. from a FileGeocoderConfigurationStore directory
+	 */
+	public void setSnapshotGeocoderFactory(GeocoderFactory snapshotGeocoderFactory) {
+		this.snapshotGeocoderFactory = snapshotGeocoderFactory;
+	}
+
+	public void setSnapshotEnabled(boolean snapshotEnabled) {
+		this.snapshotEnabled = snapshotEnabled;
+	}
+
+	/**
+	 * @param primaryTimeoutSeconds how long the background load from the primary configuration
+	 *        store may run, after starting from the snapshot, before it is interrupted; 0 for no
+	 *        timeout
+	 */
+	public void setPrimaryTimeoutSeconds(int primaryTimeoutSeconds) {
+		this.primaryTimeoutSeconds = primaryTimeoutSeconds;
+	}
+
+	public void setMetrics(GeocoderMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param reloadFile a file whose modification time is checked every pollSeconds; the geocoder
+	 *        is reloaded whenever it changes. Empty to only reload through JMX.
+	 */
+	public void setReloadFile(String reloadFile) {
+		this.reloadFile = reloadFile;
+	}
+
+	public void setPollSeconds(int pollSeconds) {
+		this.pollSeconds = pollSeconds;
+	}
+
+	/**
+	 * Loads the initial geocoder, and starts watching for reloads.
+	 */
+	public void start() {
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "geocoder-reload");
+			thread.setDaemon(true);
+			return thread;
+		});
+		loader = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "geocoder-load");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if(snapshotEnabled && snapshotGeocoderFactory != null) {
+			startFromSnapshot();
+		} else {
+			current.set(new Generation(GeocoderLoader.load(geocoderFactory, metrics, PRIMARY)));
+		}
+		if(reloadFile != null && !reloadFile.isEmpty()) {
+			reloadFileTime = getReloadFileTime();
+			executor.scheduleWithFixedDelay(this::checkReloadFile, pollSeconds, pollSeconds,
+					TimeUnit.SECONDS);
+		}
+		try {
+			objectName = MBeanRegistration.register(this, OBJECT_NAME);
+		} catch(JMException e) {
+			logger.warn("Unable to register geocoder holder with JMX", e);
+		}
+	}
+
+	private void startFromSnapshot() {
+		IGeocoder snapshot;
+		try {
+			snapshot = GeocoderLoader.load(snapshotGeocoderFactory, metrics, SNAPSHOT);
+		} catch(RuntimeException e) {
+			logger.error("Unable to load the geocoder from the configuration snapshot;"
+					+ " loading it from the primary configuration store", e);
+			current.set(new Generation(GeocoderLoader.load(geocoderFactory, metrics, PRIMARY)));
+			return;
+		}
+		current.set(new Generation(snapshot));
+		configurationSource = SNAPSHOT;
+		reloading.set(true);
+		loadPrimary();
+	}
+
+	private void loadPrimary() {
+		Future<?> load = loader.submit(() -> {
+			try {
+				IGeocoder geocoder = GeocoderLoader.load(geocoderFactory, metrics, PRIMARY);
+				swap(geocoder, true);
+				configurationSource = PRIMARY;
+				reloading.set(false);
+			} catch(Throwable e) {
+				// errors too, such as running out of memory, as reloading stays set until it loads
+				retryPrimary(e);
+			}
+		});
+		if(primaryTimeoutSeconds > 0) {
+			executor.schedule(() -> {
+				if(!load.isDone()) {
+					// the load can only be interrupted; it is not retried until it has stopped
+					logger.warn("Geocoder not loaded from the primary configuration store within"
+							+ " {} s; interrupting it and continuing from the snapshot",
+							primaryTimeoutSeconds);
+					load.cancel(true);
+				}
+			}, primaryTimeoutSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	private void retryPrimary(Throwable cause) {
+		logger.error("Unable to load the geocoder from the primary configuration store;"
+				+ " continuing from the snapshot and retrying in " + pollSeconds + " s", cause);
+		executor.schedule(this::loadPrimary, pollSeconds, TimeUnit.SECONDS);
+	}
+
+	public void shutdown() {
+		if(executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if(loader != null) {
+			loader.shutdownNow();
+			loader = null;
+		}
+		if(objectName != null) {
+			try {
+				MBeanRegistration.unregister(objectName);
+			} catch(JMException e) {
+				logger.warn("Unable to unregister geocoder holder from JMX", e);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Leases the current geocoder; it is not released until the lease is closed, even if it is
+	 * replaced in the meantime.
+	 *
+	 * @return the lease, which must be closed exactly once when the request is done with the
+	 *         geocoder
+	 */
+	public Lease acquire() {
+		while(true) {
+			Generation generation = current.get();
+			if(generation.retain()) {
+				return generation.lease;
+			}
+			// replaced and fully released between the get and the retain; use the new one
+		}
+	}
+
+	/**
+	 * @return the current geocoder, for uses that do not need a lease
+	 */
+	public IGeocoder getGeocoder() {
+		return current.get().geocoder;
+	}
+
+	@Override
+	public long getVersion() {
+		return current.get().version;
+	}
+
+	@Override
+	public long getDatasetVersion() {
+		return current.get().datasetVersion;
+	}
+
+	@Override
+	public int getRetiringGeocoders() {
+		return retiring.get();
+	}
+
+	@Override
+	public String getConfigurationSource() {
+		return configurationSource;
+	}
+
+	@Override
+	public boolean isReloading() {
+		return reloading.get();
+	}
+
+	@Override
+	public boolean reload() {
+		if(geocoderFactory == null || loader == null) {
+			return false;
+		}
+		if(!reloading.compareAndSet(false, true)) {
+			return false;
+		}
+		loader.execute(() -> {
+			try {
+				swap(GeocoderLoader.load(geocoderFactory, metrics, PRIMARY), false);
+			} catch(RuntimeException e) {
+				logger.error("Unable to reload the geocoder; continuing with version "
+						+ getVersion(), e);
+			} finally {
+				reloading.set(false);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * @param sameDataset true if the geocoder is built from the same dataset as the current one,
+	 *        so keeps its dataset version
+	 */
+	private void swap(IGeocoder geocoder, boolean sameDataset) {
+		// only called on the loader thread, so the current generation cannot change meanwhile
+		Generation previous = current.get();
+		current.set(sameDataset ? new Generation(geocoder, previous.datasetVersion)
+				: new Generation(geocoder));
+		logger.info("Swapped in geocoder version {}, of dataset version {}", getVersion(),
+				getDatasetVersion());
+		retiring.incrementAndGet();
+		previous.release();
+	}
+
+	private void checkReloadFile() {
+		FileTime time = getReloadFileTime();
+		if(time != null && !time.equals(reloadFileTime)) {
+			reloadFileTime = time;
+			logger.info("Reload file {} changed; reloading the geocoder", reloadFile);
+			reload();
+		}
+	}
+
+	private FileTime getReloadFileTime() {
+		Path path = Paths.get(reloadFile);
+		try {
+			return Files.getLastModifiedTime(path);
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * A lease on one geocoder; closing it releases the request's hold on that geocoder.
+	 */
+	public static final class Lease implements AutoCloseable {
+		private final Generation generation;
+
+		private Lease(Generation generation) {
+			this.generation = generation;
+		}
+
+		public IGeocoder getGeocoder() {
+			return generation.geocoder;
+		}
+
+		/**
+		 * @return the version of the leased geocoder
+		 */
+		public long getVersion() {
+			return generation.version;
+		}
+
+		/**
+		 * @return the version of the dataset the leased geocoder was built from
+		 */
+		public long getDatasetVersion() {
+			return generation.datasetVersion;
+		}
+
+		@Override
+		public void close() {
+			generation.release();
+		}
+	}
+
+	private final class Generation {
+		// cleared once the generation is retired and released, so that a lease left reachable
+		// does not keep the old dataset in memory
+		volatile IGeocoder geocoder;
+		final long version = VERSIONS.incrementAndGet();
+		final long datasetVersion;
+		final Lease lease = new Lease(this);
+		// one reference is held by the holder itself until the generation is replaced
+		final AtomicInteger references = new AtomicInteger(1);
+
+		Generation(IGeocoder geocoder) {
+			this.geocoder = geocoder;
+			datasetVersion = version;
+		}
+
+		Generation(IGeocoder geocoder, long datasetVersion) {
+			this.geocoder = geocoder;
+			this.datasetVersion = datasetVersion;
+		}
+
+		boolean retain() {
+			while(true) {
+				int count = references.get();
+				if(count == 0) {
+					return false;
+				}
+				if(references.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+		}
+
+		void release() {
+			if(references.decrementAndGet() == 0 && current.get() != this) {
+				geocoder = null;
+				retiring.decrementAndGet();
+				logger.info("Released geocoder version {}", version);
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package ca.bc.gov.ols.cpf;
+
+/**
+ * The JMX view of the plugin's GeocoderHolder.
+ */
+public interface GeocoderHolderMXBean {
+	/** @return the version of the current geocoder */
+	long getVersion();
+
+	/**
+	 * @return the version of the dataset the current geocoder was built from, which the
+	 *         persistent result store is kept for; it is unchanged when the primary geocoder
+	 *         replaces the snapshot
+	 */
+	long getDatasetVersion();
+
+	/** @return the number of replaced geocoders still leased by in-flight requests */
+	int getRetiringGeocoders();
+
+	/**
+	 * @return "primary" if the current geocoder was loaded from the primary configuration store,
+	 *         or "snapshot" if it was loaded from the local snapshot while the primary store was
+	 *         unavailable
+	 */
+	String getConfigurationSource();
+
+	boolean isReloading();
+
+	/**
+	 * Starts building a new geocoder in the background, to be swapped in once it is loaded.
+	 *
+	 * @return false if a reload is already in progress
+	 */
+	boolean reload();
+}
@@ -0,0 +1,39 @@
+package ca.bc.gov.ols.cpf;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.bc.gov.ols.geocoder.GeocoderFactory;
+import ca.bc.gov.ols.geocoder.IGeocoder;
+
+/**
+ * GeocoderLoader creates the geocoder from the GeocoderFactory, timing how long the datastore
+ * takes to load and build so that the cost of a module restart is visible in the logs and over
+ * JMX.
+ */
+public final class GeocoderLoader {
+	private static final Logger logger = LoggerFactory.getLogger(GeocoderLoader.class);
+
+	private GeocoderLoader() {
+	}
+
+	/**
+	 * Creates the geocoder, recording the load time.
+	 *
+	 * @param factory the factory to create the geocoder with
+	 * @param metrics the metrics to record the load time in, or null
+	 * @param source the configuration store the factory reads, for the log
+	 * @return the loaded geocoder
+	 */
+	public static IGeocoder load(GeocoderFactory factory, GeocoderMetrics metrics, String source) {
+		long start = System.nanoTime();
+		IGeocoder geocoder = factory.getGeocoder();
+		long elapsed = System.nanoTime() - start;
+		if(metrics != null) {
+			metrics.setDatastoreLoadNanos(elapsed);
+		}
+		logger.info("Loaded geocoder datastore from the {} configuration store in {} ms", source,
+				elapsed / 1000000);
+		return geocoder;
+	}
+}
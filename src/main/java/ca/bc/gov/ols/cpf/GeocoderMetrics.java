@@ -0,0 +1,353 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.bc.gov.ols.geocoder.api.data.GeocodeMatch;
+import ca.bc.gov.ols.geocoder.data.enumTypes.MatchPrecision;
+
+/**
+ * GeocoderMetrics accumulates per-stage timings and result counters for the requests executed
+ * by the plugin, and publishes them over JMX as "ca.bc.gov.ols.cpf:type=GeocoderMetrics", with
+ * an "instance" key that is unique to the plugin context.
+ *
+ * All of the counters are striped LongAdders, so concurrent requests do not contend when
+ * recording.
+ */
+public class GeocoderMetrics implements GeocoderMetricsMXBean {
+	private static final Logger logger = LoggerFactory.getLogger(GeocoderMetrics.class);
+
+	public static final String OBJECT_NAME = "ca.bc.gov.ols.cpf:type=GeocoderMetrics";
+
+	public enum Stage {
+		RESOLVE, GEOCODE, ADAPT
+	}
+
+	private static final int[] MAX_RESULTS_BUCKETS = {1, 10, 100, 1000};
+
+	private final StageTimer[] timers = new StageTimer[Stage.values().length];
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder zeroMatchRequests = new LongAdder();
+	private final EnumMap<MatchPrecision, LongAdder> precisionCounts = new EnumMap<MatchPrecision, LongAdder>(
+			MatchPrecision.class);
+	private final LongAdder[] maxResultsCounts = new LongAdder[MAX_RESULTS_BUCKETS.length + 1];
+	private final LongAdder timedOutRequests = new LongAdder();
+	private volatile long datastoreLoadNanos;
+	private SlowQueryLog slowQueryLog = new SlowQueryLog(20, 60);
+
+	private GeocodeResultCache resultCache;
+	private GeocodeResultStore resultStore;
+	private DeadlineExecutor deadlineExecutor;
+	private ObjectName objectName;
+
+	public GeocoderMetrics() {
+		for(int i = 0; i < timers.length; i++) {
+			timers[i] = new StageTimer();
+		}
+		for(MatchPrecision precision : MatchPrecision.values()) {
+			precisionCounts.put(precision, new LongAdder());
+		}
+		for(int i = 0; i < maxResultsCounts.length; i++) {
+			maxResultsCounts[i] = new LongAdder();
+		}
+	}
+
+	public void setResultCache(GeocodeResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * @param slowQueries the number of slowest recent requests to keep
+	 */
+	public void setSlowQueries(int slowQueries) {
+		slowQueryLog = new SlowQueryLog(slowQueries, 60);
+	}
+
+	public void setResultStore(GeocodeResultStore resultStore) {
+		this.resultStore = resultStore;
+	}
+
+	public void setDeadlineExecutor(DeadlineExecutor deadlineExecutor) {
+		this.deadlineExecutor = deadlineExecutor;
+	}
+
+	public void register() {
+		try {
+			objectName = MBeanRegistration.register(this, OBJECT_NAME);
+		} catch(JMException e) {
+			logger.warn("Unable to register geocoder metrics with JMX", e);
+		}
+	}
+
+	public void unregister() {
+		if(objectName != null) {
+			try {
+				MBeanRegistration.unregister(objectName);
+			} catch(JMException e) {
+				logger.warn("Unable to unregister geocoder metrics from JMX", e);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Records the stage timings and results of one executed request.
+	 *
+	 * @param adaptNanos the time taken to adapt the matches to results, or -1 if they are adapted
+	 *        lazily as they are written out, in which case no ADAPT time is recorded
+	 * @param matches the matches found for the request
+	 */
+	public void recordRequest(long resolveNanos, long geocodeNanos, long adaptNanos,
+			int maxResults, List<? extends GeocodeMatch> matches) {
+		if(adaptNanos >= 0) {
+			timers[Stage.ADAPT.ordinal()].record(adaptNanos);
+		}
+		for(GeocodeMatch match : matches) {
+			countPrecision(match.getPrecision());
+		}
+		recordRequest(resolveNanos, geocodeNanos, maxResults, matches.isEmpty());
+	}
+
+	/**
+	 * Records the stage timings and results of one request whose results were read from the
+	 * result store; the time taken to read them is recorded as the GEOCODE stage.
+	 *
+	 * @param results the stored results of the request
+	 */
+	public void recordStoredRequest(long resolveNanos, long readNanos, int maxResults,
+			List<AddressResult> results) {
+		for(AddressResult result : results) {
+			countPrecision(result.getMatchPrecision());
+		}
+		recordRequest(resolveNanos, readNanos, maxResults, results.isEmpty());
+	}
+
+	private void countPrecision(MatchPrecision precision) {
+		if(precision != null) {
+			precisionCounts.get(precision).increment();
+		}
+	}
+
+	private void recordRequest(long resolveNanos, long geocodeNanos, int maxResults,
+			boolean noMatches) {
+		requests.increment();
+		timers[Stage.RESOLVE.ordinal()].record(resolveNanos);
+		timers[Stage.GEOCODE.ordinal()].record(geocodeNanos);
+		if(noMatches) {
+			zeroMatchRequests.increment();
+		}
+		int bucket = 0;
+		while(bucket < MAX_RESULTS_BUCKETS.length && maxResults > MAX_RESULTS_BUCKETS[bucket]) {
+			bucket++;
+		}
+		maxResultsCounts[bucket].increment();
+	}
+
+	/**
+	 * Offers a request to the slow query log; it is only kept if it is one of the slowest.
+	 *
+	 * @param input supplies a description of the request's input, only called if it is kept
+	 */
+	public void recordLatency(long resolveNanos, long geocodeNanos, long adaptNanos,
+			Supplier<String> input) {
+		slowQueryLog.record(resolveNanos, geocodeNanos, adaptNanos, false, input);
+	}
+
+	/**
+	 * Records a request that was not geocoded within its time budget.
+	 */
+	public void recordTimeout(long resolveNanos, long geocodeNanos, Supplier<String> input) {
+		timedOutRequests.increment();
+		slowQueryLog.record(resolveNanos, geocodeNanos, 0, true, input);
+	}
+
+	/**
+	 * Records how long the geocoder datastore took to load; this is not cleared by reset().
+	 */
+	public void setDatastoreLoadNanos(long nanos) {
+		datastoreLoadNanos = nanos;
+	}
+
+	@Override
+	public double getDatastoreLoadMillis() {
+		return datastoreLoadNanos / 1e6;
+	}
+
+	@Override
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	@Override
+	public long getTimedOutRequests() {
+		return timedOutRequests.sum();
+	}
+
+	@Override
+	public long getDeadlineFallbacks() {
+		return deadlineExecutor == null ? 0 : deadlineExecutor.getFallbacks();
+	}
+
+	@Override
+	public List<SlowQueryLog.SlowQuery> getSlowQueries() {
+		return slowQueryLog.getSlowQueries();
+	}
+
+	@Override
+	public long getZeroMatchRequests() {
+		return zeroMatchRequests.sum();
+	}
+
+	@Override
+	public Map<String, Long> getMatchPrecisionCounts() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for(Map.Entry<MatchPrecision, LongAdder> entry : precisionCounts.entrySet()) {
+			counts.put(entry.getKey().toString(), entry.getValue().sum());
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getMaxResultsCounts() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		int lower = 1;
+		for(int i = 0; i < maxResultsCounts.length; i++) {
+			String label;
+			if(i == MAX_RESULTS_BUCKETS.length) {
+				label = ">" + (lower - 1);
+			} else if(MAX_RESULTS_BUCKETS[i] == lower) {
+				label = String.valueOf(lower);
+			} else {
+				label = lower + "-" + MAX_RESULTS_BUCKETS[i];
+			}
+			counts.put(label, maxResultsCounts[i].sum());
+			if(i < MAX_RESULTS_BUCKETS.length) {
+				lower = MAX_RESULTS_BUCKETS[i] + 1;
+			}
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Double> getStageTotalMillis() {
+		Map<String, Double> values = new LinkedHashMap<String, Double>();
+		for(Stage stage : Stage.values()) {
+			values.put(stage.name(), timers[stage.ordinal()].totalNanos.sum() / 1e6);
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, Double> getStageMeanMillis() {
+		Map<String, Double> values = new LinkedHashMap<String, Double>();
+		for(Stage stage : Stage.values()) {
+			StageTimer timer = timers[stage.ordinal()];
+			long count = timer.count.sum();
+			values.put(stage.name(), count == 0 ? 0 : timer.totalNanos.sum() / 1e6 / count);
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, Double> getStageMaxMillis() {
+		Map<String, Double> values = new LinkedHashMap<String, Double>();
+		for(Stage stage : Stage.values()) {
+			values.put(stage.name(), timers[stage.ordinal()].maxNanos.get() / 1e6);
+		}
+		return values;
+	}
+
+	@Override
+	public long getCacheHits() {
+		return resultCache == null ? 0 : resultCache.getHits();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return resultCache == null ? 0 : resultCache.getMisses();
+	}
+
+	@Override
+	public long getCacheEvictions() {
+		return resultCache == null ? 0 : resultCache.getEvictions();
+	}
+
+	@Override
+	public int getCacheSize() {
+		return resultCache == null ? 0 : resultCache.getSize();
+	}
+
+	@Override
+	public long getStoreHits() {
+		return resultStore == null ? 0 : resultStore.getHits();
+	}
+
+	@Override
+	public long getStoreMisses() {
+		return resultStore == null ? 0 : resultStore.getMisses();
+	}
+
+	@Override
+	public int getStoreSize() {
+		return resultStore == null ? 0 : resultStore.getSize();
+	}
+
+	@Override
+	public long getStoreBytes() {
+		return resultStore == null ? 0 : resultStore.getBytes();
+	}
+
+	@Override
+	public void reset() {
+		requests.reset();
+		zeroMatchRequests.reset();
+		timedOutRequests.reset();
+		slowQueryLog.clear();
+		for(StageTimer timer : timers) {
+			timer.count.reset();
+			timer.totalNanos.reset();
+			timer.maxNanos.set(0);
+		}
+		for(LongAdder counter : precisionCounts.values()) {
+			counter.reset();
+		}
+		for(LongAdder counter : maxResultsCounts) {
+			counter.reset();
+		}
+		if(resultCache != null) {
+			resultCache.resetStatistics();
+		}
+		if(resultStore != null) {
+			resultStore.resetStatistics();
+		}
+		if(deadlineExecutor != null) {
+			deadlineExecutor.resetStatistics();
+		}
+	}
+
+	private static class StageTimer {
+		final LongAdder count = new LongAdder();
+		final LongAdder totalNanos = new LongAdder();
+		final AtomicLong maxNanos = new AtomicLong();
+
+		void record(long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			// only contend on the max when it actually changes
+			if(nanos > maxNanos.get()) {
+				maxNanos.accumulateAndGet(nanos, Math::max);
+			}
+		}
+	}
+}
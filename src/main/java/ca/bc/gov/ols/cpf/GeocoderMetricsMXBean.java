@@ -0,0 +1,62 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JMX view of the plugin's GeocoderMetrics.
+ */
+public interface GeocoderMetricsMXBean {
+	/** @return the time taken to load the geocoder datastore when the module started */
+	double getDatastoreLoadMillis();
+
+	long getRequests();
+
+	long getZeroMatchRequests();
+
+	/** @return the number of requests that were not geocoded within their time budget */
+	long getTimedOutRequests();
+
+	/** @return the number of requests run without a deadline as all geocoding threads were busy */
+	long getDeadlineFallbacks();
+
+	/** @return the slowest recent requests, with their inputs and stage timings */
+	List<SlowQueryLog.SlowQuery> getSlowQueries();
+
+	/** @return the number of returned matches, by MatchPrecision */
+	Map<String, Long> getMatchPrecisionCounts();
+
+	/** @return the number of requests, by range of the maxResults parameter */
+	Map<String, Long> getMaxResultsCounts();
+
+	/** @return the total time spent in each stage of request execution, in milliseconds */
+	Map<String, Double> getStageTotalMillis();
+
+	/** @return the mean time spent in each stage of request execution, in milliseconds */
+	Map<String, Double> getStageMeanMillis();
+
+	/** @return the longest time spent in each stage since the last reset, in milliseconds */
+	Map<String, Double> getStageMaxMillis();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	long getCacheEvictions();
+
+	int getCacheSize();
+
+	/** @return the number of requests answered from the persistent result store */
+	long getStoreHits();
+
+	long getStoreMisses();
+
+	/** @return the number of queries in the persistent result store */
+	int getStoreSize();
+
+	/** @return the size of the persistent result store file */
+	long getStoreBytes();
+
+	/** Resets all of the metrics, including the result cache, store and deadline statistics. */
+	void reset();
+}
@@ -0,0 +1,94 @@
+package ca.bc.gov.ols.cpf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * GeocoderPartitions runs several geocoder partitions in one process, each in its own plugin
+ * context with its own configuration and regions, and routes each request to the partition
+ * holding its region, as a sharded deployment routes requests to worker nodes. It is for trying
+ * out a partitioned deployment locally; requests with no region go to the first partition, which
+ * returns them with an UNKNOWN_REGION fault.
+ */
+public class GeocoderPartitions implements AutoCloseable {
+	private final RegionRouter router = new RegionRouter();
+	private final List<GeocoderPluginContext> contexts = new ArrayList<GeocoderPluginContext>();
+	private final Map<String, GeocoderPluginContext> contextsByRegion = new HashMap<String, GeocoderPluginContext>();
+
+	/**
+	 * Creates and loads the partitions.
+	 *
+	 * @param localityRegionFile the CSV file of "localityName,region" records
+	 * @param partitions the overrides of each partition's context, each giving its regions as
+	 *        "regionRouter.regions" and its data, eg. as "geocoderFactory.fileConfigurationUrl"
+	 * @throws IOException if the locality regions file cannot be read
+	 */
+	public GeocoderPartitions(String localityRegionFile, List<Properties> partitions)
+			throws IOException {
+		router.setLocalityRegionFile(localityRegionFile);
+		router.load();
+		try {
+			for(Properties partition : partitions) {
+				Properties overrides = new Properties();
+				overrides.setProperty("geocoderWarmUp.enabled", "false");
+				overrides.putAll(partition);
+				overrides.setProperty("regionRouter.localityRegionFile", localityRegionFile);
+				String regions = overrides.getProperty("regionRouter.regions", "");
+				if(regions.trim().isEmpty()) {
+					throw new IllegalArgumentException("No regionRouter.regions for partition "
+							+ contexts.size());
+				}
+				GeocoderPluginContext context = new GeocoderPluginContext(overrides);
+				contexts.add(context);
+				for(String region : regions.split(",")) {
+					contextsByRegion.put(GeocodeQueryKey.normalize(region), context);
+				}
+			}
+		} catch(RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param request the request parameter values, by parameter name
+	 * @return the region of the request, or null if it has none
+	 */
+	public String route(Map<String, ?> request) {
+		Object localityName = request.get("localityName");
+		Object addressString = request.get("addressString");
+		return router.route(localityName == null ? null : localityName.toString(),
+				addressString == null ? null : addressString.toString());
+	}
+
+	/**
+	 * Executes a request on the partition holding its region.
+	 *
+	 * @param request the request parameter values, by parameter name
+	 * @return the results of the request
+	 */
+	public List<AddressResult> execute(Map<String, ?> request) {
+		String region = route(request);
+		GeocoderPluginContext context = region == null ? null : contextsByRegion.get(region);
+		if(context == null) {
+			context = contexts.get(0);
+		}
+		GeocoderPlugin plugin = context.createPlugin();
+		RequestParameterBinder.bind(plugin, request);
+		plugin.execute();
+		return plugin.getResults();
+	}
+
+	@Override
+	public void close() {
+		for(GeocoderPluginContext context : contexts) {
+			context.close();
+		}
+		contexts.clear();
+		contextsByRegion.clear();
+	}
+}
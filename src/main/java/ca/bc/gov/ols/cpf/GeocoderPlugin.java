@@ -1,10 +1,15 @@
 package ca.bc.gov.ols.cpf;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.PreDestroy;
 
@@ -17,10 +22,6 @@ import ca.bc.gov.ols.geocoder.api.GeocodeQuery;
 import ca.bc.gov.ols.geocoder.api.data.GeocodeMatch;
 import ca.bc.gov.ols.geocoder.api.data.SearchResults;
 import ca.bc.gov.ols.geocoder.config.GeocoderConfig;
-import ca.bc.gov.ols.geocoder.data.enumTypes.Interpolation;
-import ca.bc.gov.ols.geocoder.data.enumTypes.LocationDescriptor;
-import ca.bc.gov.ols.geocoder.data.enumTypes.MatchPrecision;
-import ca.bc.gov.ols.util.GeomParseUtil;
 import ca.bc.gov.open.cpf.plugin.api.AllowedValues;
 import ca.bc.gov.open.cpf.plugin.api.BusinessApplicationPlugin;
 import ca.bc.gov.open.cpf.plugin.api.DefaultValue;
@@ -41,17 +42,104 @@ public class GeocoderPlugin {
 	
 	public static final String PLUGIN_NAME = "geocoder";
 
-	public static final GeometryFactory GEOMETRY_FACTORY = GeometryFactory.getFactory(3005, 2);
-	private static final org.locationtech.jts.geom.GeometryFactory LT_GEOMETRY_FACTORY = new org.locationtech.jts.geom.GeometryFactory(new org.locationtech.jts.geom.PrecisionModel(1000), 3005);
+	public static final int SRID = 3005;
+	public static final GeometryFactory GEOMETRY_FACTORY = GeometryFactory.getFactory(SRID, 2);
+	private static final org.locationtech.jts.geom.GeometryFactory LT_GEOMETRY_FACTORY = new org.locationtech.jts.geom.GeometryFactory(new org.locationtech.jts.geom.PrecisionModel(1000), SRID);
 	private static final CpfGeometryReprojector REPROJECTOR = new CpfGeometryReprojector(LT_GEOMETRY_FACTORY);
 	
-	private IGeocoder geocoder;
+	private GeocoderHolder geocoderHolder;
+	private GeocodeResultCache resultCache;
+	private GeocodeResultStore resultStore;
+	private GeocoderMetrics metrics;
+	private DeadlineExecutor deadlineExecutor;
+	private RegionRouter regionRouter;
+	private int streamingThreshold = 100;
 	
 	private GeocodeQuery query = new GeocodeQuery();
 	private List<AddressResult> results;	
-	
+	// set by the GeocoderBatchExecutor when this request, or the request it shares, failed
+	private RuntimeException failure;
+	
+	// raw parameter values, retained to build the result cache key; the job parameters that
+	// need parsing are only applied to the query through the shared JobOptions
+	private String addressString;
+	private int maxResults = 1;
+	private int minScore;
+	private int setBack;
+	private String matchPrecision;
+	private String matchPrecisionNot;
+	private String localities;
+	private String notLocalities;
+	private String centre;
+	private Integer maxDistance;
+	private String bbox;
+	private boolean echo;
+	private String interpolation;
+	private String locationDescriptor;
+	private String siteName;
+	private String unitDesignator;
+	private String unitNumber;
+	private String unitNumberSuffix;
+	private String civicNumber;
+	private String civicNumberSuffix;
+	private String streetName;
+	private String streetType;
+	private String streetDirection;
+	private String streetQualifier;
+	private String localityName;
+	private String provinceCode;
+	private String yourId;
+	private boolean extrapolate;
+	private double[] parcelPoint;
+	private Set<ResultField> outputFields;
+	private String previousSiteID;
+	private LocalDate previousChangeDate;
+	private boolean diagnostics;
+	
+	/**
+	 * Sets a fixed geocoder to execute requests against, for use outside of a GeocoderHolder.
+	 */
 	public void setGeocoder(IGeocoder geocoder) {
-		this.geocoder = geocoder;
+		this.geocoderHolder = GeocoderHolder.fixed(geocoder);
+	}
+	
+	public void setGeocoderHolder(GeocoderHolder geocoderHolder) {
+		this.geocoderHolder = geocoderHolder;
+	}
+	
+	public void setResultCache(GeocodeResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+	
+	public void setResultStore(GeocodeResultStore resultStore) {
+		this.resultStore = resultStore;
+	}
+	
+	public void setMetrics(GeocoderMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * @param deadlineExecutor runs the geocoding step with a time budget; without one, requests
+	 *        have no deadline
+	 */
+	public void setDeadlineExecutor(DeadlineExecutor deadlineExecutor) {
+		this.deadlineExecutor = deadlineExecutor;
+	}
+	
+	/**
+	 * @param regionRouter finds the region of each request, on workers holding only some regions
+	 */
+	public void setRegionRouter(RegionRouter regionRouter) {
+		this.regionRouter = regionRouter;
+	}
+	
+	/**
+	 * @param streamingThreshold requests with more matches than this have their results adapted
+	 *        lazily as CPF reads them, instead of all at once
+	 */
+	public void setStreamingThreshold(int streamingThreshold) {
+		this.streamingThreshold = streamingThreshold;
 	}
 	
 	@ResultList
@@ -59,8 +147,21 @@ public class GeocoderPlugin {
 		return results;
 	}
 	
+	/**
+	 * @return the failure of this request when executed by the GeocoderBatchExecutor, or null if
+	 *         it succeeded or has not been executed that way
+	 */
+	public RuntimeException getFailure() {
+		return failure;
+	}
+	
+	void setFailure(RuntimeException failure) {
+		this.failure = failure;
+	}
+	
 	@RequestParameter(index = 1, description = " Example 1: 525 Superior St, Victoria, BC Example 2: Yates and Douglas, Victoria, BC")
 	public void setAddressString(String addressString) {
+		this.addressString = addressString;
 		query.setAddressString(addressString);
 	}
 	
@@ -68,6 +169,7 @@ public class GeocoderPlugin {
 	@DefaultValue("1")
 	@RequestParameter(index = 2, minValue = "1", maxValue = "1000", description = "Maximum number of matched addresses to return for each input address")
 	public void setMaxResults(int maxResults) {
+		this.maxResults = maxResults;
 		query.setMaxResults(maxResults);
 	}
 	
@@ -75,6 +177,7 @@ public class GeocoderPlugin {
 	@DefaultValue("0")
 	@RequestParameter(index = 3, minValue = "0", maxValue = "100", description = "Between 0 and 100; the higher the score, the better the match")
 	public void setMinScore(int minScore) {
+		this.minScore = minScore;
 		query.setMinScore(minScore);
 	}
 	
@@ -82,48 +185,44 @@ public class GeocoderPlugin {
 	@DefaultValue("0")
 	@RequestParameter(index = 4, minValue = "0", maxValue = "1000", description = "In metres from curb and away from street")
 	public void setSetBack(int setBack) {
+		this.setBack = setBack;
 		query.setSetBack(setBack);
 	}
 	
 	@JobParameter
 	@RequestParameter(index = 5, description = "Comma-delimited list of acceptable MatchPrecision values")
 	public void setMatchPrecision(String matchPrecision) {
-		query.setMatchPrecision(MatchPrecision.parseList(matchPrecision));
+		this.matchPrecision = matchPrecision;
 	}
 	
 	@JobParameter
 	@RequestParameter(index = 6, description = "Comma-delimited list of unacceptable MatchPrecision values")
 	public void setMatchPrecisionNot(String matchPrecisionNot) {
-		query.setMatchPrecisionNot(MatchPrecision.parseList(matchPrecisionNot));
+		this.matchPrecisionNot = matchPrecisionNot;
 	}
 	
 	@JobParameter
 	@RequestParameter(index = 7, description = "Comma-delimited list of acceptable locality names; matches not in a locality in this list will not be returned.")
 	public void setLocalities(String localities) {
-		if(localities != null && !localities.isEmpty()) {
-			query.setLocalities(Arrays.asList(localities.toLowerCase().split(",")));
-		}
+		this.localities = localities;
 	}
 	
 	@JobParameter
 	@RequestParameter(index = 8, description = "Comma-delimited list of unacceptable locality names; matches in a locality in this list will not be returned.")
 	public void setNotLocalities(String notLocalities) {
-		if(notLocalities != null && !notLocalities.isEmpty()) {
-			query.setNotLocalities(Arrays.asList(notLocalities.toLowerCase().split(",")));
-		}
+		this.notLocalities = notLocalities;
 	}
 	
 	@JobParameter
 	@RequestParameter(index = 14, description = "Used with maxDistance to define a circular spatial filter for results")
 	public void setCentre(String centre) {
-		if(centre != null && !centre.isEmpty()) {
-			query.setCentre(GeomParseUtil.parseDoubleArray(centre));
-		}
+		this.centre = centre;
 	}
 	
 	@JobParameter
 	@RequestParameter(index = 15, minValue = "0", description = "Maximum distance from the centre point, in meters, defines a circular spatial filter for results")
 	public void setMaxDistance(Integer maxDistance) {
+		this.maxDistance = maxDistance;
 		if(maxDistance != null) {
 			query.setMaxDistance(maxDistance);
 		}
@@ -132,9 +231,7 @@ public class GeocoderPlugin {
 	@JobParameter
 	@RequestParameter(index = 16, description = "Bounding box used to spatially filter results, specified as <xmin>,<ymin>,<xmax>,<ymax> in the same spatial reference system as is select for the output.")
 	public void setBbox(String bbox) {
-		if(bbox != null && !bbox.isEmpty()) {
-			query.setBbox(GeomParseUtil.parseDoubleArray(bbox));
-		}
+		this.bbox = bbox;
 	}
 	
 	@JobParameter
@@ -142,7 +239,8 @@ public class GeocoderPlugin {
 	@DefaultValue("true")
 	@RequestParameter(index = 17, description = "Include unmatched address details such as site name in results. Use of the value 'on' is deprecated; 'true' is preferred.")
 	public void setEcho(String echoText) {
-		query.setEcho(echoText == "true" || echoText == "on" ? true : false);
+		echo = echoText == "true" || echoText == "on" ? true : false;
+		query.setEcho(echo);
 	}
 	
 	@JobParameter
@@ -150,7 +248,7 @@ public class GeocoderPlugin {
 	@DefaultValue("adaptive")
 	@RequestParameter(index = 18, description = "Specifies the type of interpolation to use for results. None will only return known site matches.")
 	public void setInterpolation(String interpolation) {
-		query.setInterpolation(Interpolation.convert(interpolation));
+		this.interpolation = interpolation;
 	}
 	
 	@JobParameter
@@ -159,73 +257,86 @@ public class GeocoderPlugin {
 	@DefaultValue("any")
 	@RequestParameter(index = 19, description = "Specifies your preference of what the returned location should represent")
 	public void setLocationDescriptor(String locationDescriptor) {
-		query.setLocationDescriptor(LocationDescriptor.convert(locationDescriptor));
+		this.locationDescriptor = locationDescriptor;
 	}
 	
 	@RequestParameter(index = 20, description = "(e.g., Victoria General Hospital)")
 	public void setSiteName(String siteName) {
+		this.siteName = siteName;
 		query.setSiteName(siteName);
 	}
 	
 	@RequestParameter(index = 21, description = " (e.g., Unit, Apt, Suite)")
 	public void setUnitDesignator(String unitDesignator) {
+		this.unitDesignator = unitDesignator;
 		query.setUnitDesignator(unitDesignator);
 	}
 	
 	@RequestParameter(index = 22, description = "(e.g., 1 as in Unit 1, B as in Apt B)")
 	public void setUnitNumber(String unitNumber) {
+		this.unitNumber = unitNumber;
 		query.setUnitNumber(unitNumber);
 	}
 	
 	@RequestParameter(index = 23, description = " (e.g., A as in Unit 13A)")
 	public void setUnitNumberSuffix(String unitNumberSuffix) {
+		this.unitNumberSuffix = unitNumberSuffix;
 		query.setUnitNumberSuffix(unitNumberSuffix);
 	}
 	
 	@RequestParameter(index = 24, description = " (e.g., the 525 in 525 Superior St)")
 	public void setCivicNumber(String civicNumber) {
+		this.civicNumber = civicNumber;
 		query.setCivicNumber(civicNumber);
 	}
 	
 	@RequestParameter(index = 25, description = " (e.g., the A in 14A Main St)")
 	public void setCivicNumberSuffix(String civicNumberSuffix) {
+		this.civicNumberSuffix = civicNumberSuffix;
 		query.setCivicNumberSuffix(civicNumberSuffix);
 	}
 	
 	@RequestParameter(index = 26, description = "(e.g., the Gorge in 414 Gorge Rd E)")
 	public void setStreetName(String streetName) {
+		this.streetName = streetName;
 		query.setStreetName(streetName);
 	}
 	
 	@RequestParameter(index = 27, description = "(e.g., the Rd in 414 Gorge Rd E); typical values are St, Rd, Ave")
 	public void setStreetType(String streetType) {
+		this.streetType = streetType;
 		query.setStreetType(streetType);
 	}
 	
 	@RequestParameter(index = 28, description = "(e.g., the E in 414 Gorge Rd E); typical values are N,S,E,W,NE,NW,SE,SW")
 	@DefaultValue("")
 	public void setStreetDirection(String streetDirection) {
+		this.streetDirection = streetDirection;
 		query.setStreetDirection(streetDirection);
 	}
 	
 	@RequestParameter(index = 29, description = "(e.g., the Bridge in Johnson St Bridge, Victoria, BC)")
 	public void setStreetQualifier(String streetQualifier) {
+		this.streetQualifier = streetQualifier;
 		query.setStreetQualifier(streetQualifier);
 	}
 	
 	@RequestParameter(index = 30, description = "(e.g., Comox, Shearwater)")
 	public void setLocalityName(String localityName) {
+		this.localityName = localityName;
 		query.setLocalityName(localityName);
 	}
 	
 	@DefaultValue("BC")
 	@RequestParameter(index = 31, description = "(e.g., BC)")
 	public void setProvinceCode(String province) {
+		this.provinceCode = province;
 		query.setStateProvTerr(province);
 	}
 	
 	@RequestParameter(index = 32, description = "Unique identifier you have assigned to an address occupant")
 	public void setYourId(String yourId) {
+		this.yourId = yourId;
 		query.setYourId(yourId);
 	}
 	
@@ -233,6 +344,7 @@ public class GeocoderPlugin {
 	@DefaultValue("false")
 	@RequestParameter(index = 33, description = "Forces matched site to return an accessPoint that is the nearest curb point to site location")
 	public void setExtrapolate(boolean extrapolate) {
+		this.extrapolate = extrapolate;
 		query.setExtrapolate(extrapolate);
 	}
 	
@@ -244,25 +356,295 @@ public class GeocoderPlugin {
 			primaryGeometry = true)
 	public void setParcelPoint(Point parcelPoint) {
 		if(parcelPoint != null) {
+			this.parcelPoint = new double[] {parcelPoint.getX(), parcelPoint.getY()};
 			query.setParcelPointGeom(LT_GEOMETRY_FACTORY.createPoint(new org.locationtech.jts.geom.Coordinate(parcelPoint.getX(), parcelPoint.getY())));
 		}
 	}
 	
+	@JobParameter
+	@RequestParameter(index = 35, description = "Comma-delimited list of the result attributes to output (e.g., fullAddress,score,location); the other attributes are left empty. By default all attributes are output.")
+	public void setOutputFields(String outputFields) {
+		// parsed here, so that an unknown field name fails the request before it is geocoded
+		this.outputFields = ResultField.parseList(outputFields);
+	}
+	
+	@RequestParameter(index = 36, description = "The siteID of this address in a previous job's results; the changeStatus of the results is given relative to it")
+	public void setPreviousSiteID(String previousSiteID) {
+		this.previousSiteID = previousSiteID == null || previousSiteID.isEmpty() ? null
+				: previousSiteID;
+	}
+	
+	@RequestParameter(index = 37, description = "The changeDate of this address in a previous job's results, as YYYY-MM-DD; sites changed after it have a changeStatus of CHANGED")
+	public void setPreviousChangeDate(String previousChangeDate) {
+		if(previousChangeDate == null || previousChangeDate.isEmpty()) {
+			this.previousChangeDate = null;
+			return;
+		}
+		try {
+			this.previousChangeDate = LocalDate.parse(previousChangeDate.trim());
+		} catch(DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid previousChangeDate \"" + previousChangeDate
+					+ "\"; expected YYYY-MM-DD", e);
+		}
+	}
+	
+	@JobParameter
+	@DefaultValue("false")
+	@RequestParameter(index = 38, description = "Adds the diagnostic result attributes resolveTime, geocodeTime, candidateCount and resultSource to each result, to find the requests that are expensive to geocode")
+	public void setDiagnostics(boolean diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+	
 	public void execute() {
+		if(regionRouter != null && regionRouter.isPartitioned()) {
+			String region = regionRouter.route(localityName, addressString);
+			if(!regionRouter.holds(region)) {
+				results = new ArrayList<AddressResult>(1);
+				results.add(region == null ? AddressResult.unknownRegion(yourId)
+						: AddressResult.notInPartition(yourId, region));
+				return;
+			}
+		}
+		// the lease keeps this request on one geocoder even if a new one is swapped in
+		try(GeocoderHolder.Lease lease = geocoderHolder.acquire()) {
+			execute(lease.getGeocoder(), lease.getVersion(), lease.getDatasetVersion());
+		}
+		compareToPrevious();
+	}
+	
+	private void execute(IGeocoder geocoder, long version, long datasetVersion) {
+		long start = System.nanoTime();
+		GeocoderEvents.Resolve resolveEvent = new GeocoderEvents.Resolve();
+		resolveEvent.begin();
+		getJobOptions().applyTo(query);
 		query.resolveAndValidate(geocoder.getConfig(), LT_GEOMETRY_FACTORY, REPROJECTOR);
-		SearchResults sr = geocoder.geocode(query);
-		results = new ArrayList<AddressResult>();
+		resolveEvent.commit(addressString, null);
+		long resolved = System.nanoTime();
+		GeocoderEvents.Geocode geocodeEvent = new GeocoderEvents.Geocode();
+		geocodeEvent.begin();
+		List<? extends GeocodeMatch> matches = null;
+		BigDecimal executionTime = null;
+		ResultSource source = ResultSource.CACHE;
+		GeocodeQueryKey key = null;
+		if(resultCache != null && resultCache.isEnabled()) {
+			resultCache.checkVersion(version);
+			key = new GeocodeQueryKey(version, getQueryKey());
+			matches = resultCache.get(key);
+		}
+		GeocodeQueryKey storeKey = null;
+		if(matches == null && resultStore != null && resultStore.isEnabled()) {
+			resultStore.checkVersion(datasetVersion);
+			storeKey = getResultKey();
+			List<AddressResult> stored = resultStore.get(storeKey, yourId);
+			if(stored != null) {
+				geocodeEvent.commit(addressString, null);
+				long read = System.nanoTime();
+				BigDecimal readTime = BigDecimal.valueOf((read - resolved) / 1000, 3);
+				for(AddressResult result : stored) {
+					result.setExecutionTime(readTime);
+				}
+				results = stored;
+				setDiagnostics(resolved - start, read - resolved, stored.size(),
+						ResultSource.STORE);
+				if(metrics != null) {
+					metrics.recordStoredRequest(resolved - start, read - resolved, maxResults,
+							stored);
+					metrics.recordLatency(resolved - start, read - resolved, 0,
+							this::describeInput);
+				}
+				return;
+			}
+		}
+		if(matches == null) {
+			source = ResultSource.GEOCODED;
+			SearchResults sr;
+			try {
+				sr = geocode(geocoder);
+			} catch(TimeoutException e) {
+				geocodeEvent.commit(addressString, null);
+				results = new ArrayList<AddressResult>(1);
+				results.add(AddressResult.timedOut(yourId, deadlineExecutor.getTimeoutMillis()));
+				// the result only reports the timeout, so no matches were found
+				setDiagnostics(resolved - start, System.nanoTime() - resolved, 0,
+						ResultSource.TIMED_OUT);
+				if(metrics != null) {
+					metrics.recordTimeout(resolved - start, System.nanoTime() - resolved,
+							this::describeInput);
+				}
+				return;
+			}
+			matches = sr.getMatches();
+			executionTime = sr.getExecutionTime();
+			if(key != null) {
+				resultCache.put(key, matches);
+			}
+		}
+		geocodeEvent.commit(addressString, matches);
+		long geocoded = System.nanoTime();
+		if(executionTime == null) {
+			// the matches came from the cache, so this request's execution time is the lookup
+			executionTime = BigDecimal.valueOf((geocoded - resolved) / 1000, 3);
+		}
 		GeocoderConfig config = null;
 		if(geocoder.getDatastore() != null) {
 			config = geocoder.getDatastore().getConfig();
 		}
-		for(GeocodeMatch match : sr.getMatches()) {
-			AddressResult result = new AddressResult(match, sr, config);
-			results.add(result);
+		Set<ResultField> fields = getResultFields();
+		// incremental and diagnostic results are set individually, so are never adapted lazily
+		boolean lazy = matches.size() > streamingThreshold && !isIncremental() && !diagnostics;
+		if(lazy) {
+			results = new AddressResultList(matches, executionTime, config, yourId, fields);
+		} else {
+			GeocoderEvents.Adapt adaptEvent = new GeocoderEvents.Adapt();
+			adaptEvent.begin();
+			results = new ArrayList<AddressResult>(matches.size());
+			for(GeocodeMatch match : matches) {
+				AddressResult result = new AddressResult(match, executionTime, config, yourId,
+						fields);
+				results.add(result);
+			}
+			adaptEvent.commit(addressString, matches);
+			if(storeKey != null) {
+				resultStore.put(storeKey, results);
+			}
+			setDiagnostics(resolved - start, geocoded - resolved, matches.size(), source);
+		}
+		if(metrics != null) {
+			// lazily adapted results are adapted as CPF writes them, outside of the request
+			long adaptNanos = lazy ? -1 : System.nanoTime() - geocoded;
+			metrics.recordRequest(resolved - start, geocoded - resolved, adaptNanos,
+					maxResults, matches);
+			metrics.recordLatency(resolved - start, geocoded - resolved, Math.max(adaptNanos, 0),
+					this::describeInput);
 		}
 	}
 	
+	private void setDiagnostics(long resolveNanos, long geocodeNanos, int candidateCount,
+			ResultSource source) {
+		if(diagnostics) {
+			for(AddressResult result : results) {
+				result.setDiagnostics(resolveNanos, geocodeNanos, candidateCount, source);
+			}
+		}
+	}
+	
+	private SearchResults geocode(IGeocoder geocoder) throws TimeoutException {
+		if(deadlineExecutor == null) {
+			return geocoder.geocode(query);
+		}
+		return deadlineExecutor.call(() -> geocoder.geocode(query));
+	}
+	
+	/**
+	 * @return a description of this request's input, for the slow query log
+	 */
+	private String describeInput() {
+		String input = getQueryKey().toString();
+		return input.length() > 1000 ? input.substring(0, 1000) + "..." : input;
+	}
+	
+	/**
+	 * Takes this request's results, or its failure, from another request with the same result
+	 * key, instead of executing it.
+	 * 
+	 * @param source the executed request to share the results of
+	 */
+	public void shareResults(GeocoderPlugin source) {
+		List<AddressResult> sourceResults = source.getResults();
+		if(source.failure != null || sourceResults == null) {
+			failure = source.failure;
+			results = null;
+			return;
+		}
+		results = new ArrayList<AddressResult>(sourceResults.size());
+		for(AddressResult result : sourceResults) {
+			AddressResult copy = result.withYourId(yourId);
+			if(diagnostics) {
+				copy.setResultSource(ResultSource.DEDUP);
+			}
+			results.add(copy);
+		}
+		compareToPrevious();
+	}
+	
+	/**
+	 * @return true if this request gives its result from a previous job to compare against
+	 */
+	public boolean isIncremental() {
+		return previousSiteID != null || previousChangeDate != null;
+	}
+	
+	private Set<ResultField> getResultFields() {
+		Set<ResultField> fields = outputFields;
+		if(fields != null && isIncremental()) {
+			// needed to compare against the previous result
+			fields = EnumSet.copyOf(fields);
+			fields.addAll(EnumSet.of(ResultField.SITE_ID, ResultField.CHANGE_DATE,
+					ResultField.SITE_RETIRE_DATE, ResultField.CHANGE_STATUS));
+		}
+		return fields;
+	}
+	
+	private void compareToPrevious() {
+		if(isIncremental() && results != null) {
+			for(AddressResult result : results) {
+				result.compareToPrevious(previousSiteID, previousChangeDate);
+			}
+		}
+	}
+	
+	/**
+	 * @return the parsed job parameters, shared with every other request in the job
+	 */
+	public JobOptions getJobOptions() {
+		return JobOptions.compile(matchPrecision, matchPrecisionNot, localities, notLocalities,
+				centre, bbox, interpolation, locationDescriptor);
+	}
+	
+	/**
+	 * Builds the key identifying this request's matches; it includes the address fields and
+	 * every parameter that affects the matches, but not the yourId or the output fields. The
+	 * address fields are normalized, unless the results echo them back.
+	 * 
+	 * @return the result cache key for this request
+	 */
+	public GeocodeQueryKey getQueryKey() {
+		return new GeocodeQueryKey(
+				keyField(addressString),
+				keyField(siteName),
+				keyField(unitDesignator),
+				keyField(unitNumber),
+				keyField(unitNumberSuffix),
+				keyField(civicNumber),
+				keyField(civicNumberSuffix),
+				keyField(streetName),
+				keyField(streetType),
+				keyField(streetDirection),
+				keyField(streetQualifier),
+				keyField(localityName),
+				keyField(provinceCode),
+				maxResults, minScore, setBack, matchPrecision, matchPrecisionNot,
+				localities, notLocalities, centre, maxDistance, bbox, echo, interpolation,
+				locationDescriptor, extrapolate, parcelPoint);
+	}
+	
+	/**
+	 * Builds the key identifying this request's results, as adapted from its matches; it is the
+	 * query key together with the output fields and whether the request is incremental.
+	 * 
+	 * @return the result store and deduplication key for this request
+	 */
+	public GeocodeQueryKey getResultKey() {
+		return new GeocodeQueryKey(getQueryKey(), outputFields, isIncremental());
+	}
+	
+	private String keyField(String s) {
+		return echo ? GeocodeQueryKey.exact(s) : GeocodeQueryKey.normalize(s);
+	}
+	
 	public void testExecute() {
+		IGeocoder geocoder = geocoderHolder.getGeocoder();
+		getJobOptions().applyTo(query);
 		query.resolveAndValidate(geocoder.getDatastore().getConfig(), LT_GEOMETRY_FACTORY, REPROJECTOR);
 		results = new ArrayList<AddressResult>();
 		SearchResults sr = DummyGeocoder.getDummyResults(query, GeocoderDataStore.getGeometryFactory());
@@ -280,6 +662,6 @@ public class GeocoderPlugin {
 	
 	@PreDestroy
 	public void clearGeocoder() {
-		geocoder = null;
+		geocoderHolder = null;
 	}
 }
\ No newline at end of file
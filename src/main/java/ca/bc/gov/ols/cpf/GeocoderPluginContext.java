@@ -0,0 +1,67 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.Properties;
+
+import org.springframework.beans.factory.config.PropertyOverrideConfigurer;
+import org.springframework.context.support.GenericXmlApplicationContext;
+
+import ca.bc.gov.ols.geocoder.IGeocoder;
+
+/**
+ * GeocoderPluginContext loads the plugin's Spring configuration outside of CPF, so that the
+ * plugin can be run offline by tools such as benchmarks, load tests and command-line runners.
+ *
+ * The bean properties normally set through the CPF module configuration are given as overrides
+ * in the form "beanName.property=value", eg. "geocoderFactory.dummyMode=true".
+ */
+public class GeocoderPluginContext implements AutoCloseable {
+	public static final String PLUGIN_CONFIG = "classpath:/META-INF/ca.bc.gov.open.cpf.plugin.sf.xml";
+	public static final String GEOCODER_CONFIG = "classpath:/ca/bc/gov/ols/cpf/Geocoder.sf.xml";
+
+	private final GenericXmlApplicationContext context;
+
+	public GeocoderPluginContext(Properties overrides) {
+		context = new GenericXmlApplicationContext();
+		PropertyOverrideConfigurer configurer = new PropertyOverrideConfigurer();
+		configurer.setProperties(overrides);
+		context.addBeanFactoryPostProcessor(configurer);
+		context.load(GEOCODER_CONFIG, PLUGIN_CONFIG);
+		context.refresh();
+	}
+
+	/**
+	 * Creates a context using the dummy geocoder, which needs no configuration or data. The
+	 * result cache and store are disabled, so that repeated requests measure execute() rather
+	 * than cache lookups.
+	 *
+	 * @return the new context
+	 */
+	public static GeocoderPluginContext dummy() {
+		Properties overrides = new Properties();
+		overrides.setProperty("geocoderFactory.dummyMode", "true");
+		overrides.setProperty("geocoderWarmUp.enabled", "false");
+		overrides.setProperty("geocodeResultCache.maxSize", "0");
+		overrides.setProperty("geocodeResultStore.directory", "");
+		return new GeocoderPluginContext(overrides);
+	}
+
+	public IGeocoder getGeocoder() {
+		return context.getBean("geocoderHolder", GeocoderHolder.class).getGeocoder();
+	}
+
+	/**
+	 * @return a new plugin instance, wired in the same way as those CPF creates
+	 */
+	public GeocoderPlugin createPlugin() {
+		return context.getBean(GeocoderPlugin.PLUGIN_NAME, GeocoderPlugin.class);
+	}
+
+	public <T> T getBean(String name, Class<T> type) {
+		return context.getBean(name, type);
+	}
+
+	@Override
+	public void close() {
+		context.close();
+	}
+}
@@ -0,0 +1,156 @@
+package ca.bc.gov.ols.cpf;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
+
+/**
+ * GeocoderWarmUp runs a sample workload through the full GeocoderPlugin path on several threads
+ * when the module starts, before it accepts any work, so that the first real requests do not pay
+ * for JIT compilation and for touching the datastore for the first time. It is disabled unless
+ * enabled is set.
+ *
+ * The sample workload is a bundled list of addresses from across the province, or the addresses
+ * in a configured file, one per line. The warm-up requests bypass the result cache and store, as
+ * the few sample addresses would otherwise almost all be cache hits and leave the geocoder cold.
+ */
+public class GeocoderWarmUp {
+	private static final Logger logger = LoggerFactory.getLogger(GeocoderWarmUp.class);
+
+	private static final String BUNDLED_ADDRESSES = "warmup-addresses.txt";
+
+	private ObjectFactory<GeocoderPlugin> pluginFactory;
+	private GeocoderMetrics metrics;
+	private boolean enabled = false;
+	private int threads = 4;
+	private int requests = 5000;
+	private String addressFile;
+
+	public void setPluginFactory(ObjectFactory<GeocoderPlugin> pluginFactory) {
+		this.pluginFactory = pluginFactory;
+	}
+
+	public void setMetrics(GeocoderMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public void setRequests(int requests) {
+		this.requests = requests;
+	}
+
+	/**
+	 * @param addressFile a file of addresses to use instead of the bundled ones; empty for the
+	 *        bundled addresses
+	 */
+	public void setAddressFile(String addressFile) {
+		this.addressFile = addressFile;
+	}
+
+	public void warmUp() throws InterruptedException {
+		if(!enabled || requests <= 0 || threads <= 0) {
+			return;
+		}
+		List<String> addresses;
+		try {
+			addresses = loadAddresses();
+		} catch(IOException e) {
+			logger.warn("Unable to read warm-up addresses; skipping warm-up", e);
+			return;
+		}
+		if(addresses.isEmpty()) {
+			return;
+		}
+
+		logger.info("Warming up geocoder with {} requests on {} threads", requests, threads);
+		// the latency reached is measured over the last tenth of the requests
+		int tailStart = requests - Math.max(1, requests / 10);
+		AtomicInteger next = new AtomicInteger();
+		LongAdder tailNanos = new LongAdder();
+		LongAdder tailCount = new LongAdder();
+		LongAdder errors = new LongAdder();
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for(int t = 0; t < threads; t++) {
+			executor.execute(() -> {
+				for(int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+					long requestStart = System.nanoTime();
+					try {
+						GeocoderPlugin plugin = pluginFactory.getObject();
+						plugin.setResultCache(null);
+						plugin.setResultStore(null);
+						Map<String, String> request = Collections.singletonMap("addressString",
+								addresses.get(i % addresses.size()));
+						RequestParameterBinder.bind(plugin, request);
+						plugin.execute();
+					} catch(RuntimeException e) {
+						errors.increment();
+					}
+					if(i >= tailStart) {
+						tailNanos.add(System.nanoTime() - requestStart);
+						tailCount.increment();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		long elapsed = System.nanoTime() - start;
+
+		logger.info(String.format(
+				"Geocoder warm-up took %.1f s (%d errors); mean latency over the last %d requests was %.3f ms",
+				elapsed / 1e9, errors.sum(), tailCount.sum(),
+				tailCount.sum() == 0 ? 0 : tailNanos.sum() / 1e6 / tailCount.sum()));
+		if(metrics != null) {
+			// keep the warm-up requests out of the production metrics and cache statistics
+			metrics.reset();
+		}
+	}
+
+	private List<String> loadAddresses() throws IOException {
+		BufferedReader reader;
+		if(addressFile != null && !addressFile.isEmpty()) {
+			reader = Files.newBufferedReader(Paths.get(addressFile), StandardCharsets.UTF_8);
+		} else {
+			InputStream in = GeocoderWarmUp.class.getResourceAsStream(BUNDLED_ADDRESSES);
+			if(in == null) {
+				throw new IOException("Missing bundled resource " + BUNDLED_ADDRESSES);
+			}
+			reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		}
+		List<String> addresses = new ArrayList<String>();
+		try(BufferedReader r = reader) {
+			for(String line = r.readLine(); line != null; line = r.readLine()) {
+				line = line.trim();
+				if(!line.isEmpty()) {
+					addresses.add(line);
+				}
+			}
+		}
+		return addresses;
+	}
+}
@@ -0,0 +1,131 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import ca.bc.gov.ols.geocoder.api.GeocodeQuery;
+import ca.bc.gov.ols.geocoder.data.enumTypes.Interpolation;
+import ca.bc.gov.ols.geocoder.data.enumTypes.LocationDescriptor;
+import ca.bc.gov.ols.geocoder.data.enumTypes.MatchPrecision;
+import ca.bc.gov.ols.util.GeomParseUtil;
+
+/**
+ * JobOptions holds the job parameters that need parsing (match precision lists, locality lists,
+ * spatial filters, interpolation and location descriptor), parsed once and shared read-only by
+ * every request with the same parameter values, ie. every request in a job.
+ */
+public final class JobOptions {
+	private static final int MAX_COMPILED = 256;
+	// least recently used first, so that the options of jobs still running are kept
+	private static final Map<GeocodeQueryKey, JobOptions> COMPILED = Collections.synchronizedMap(
+			new LinkedHashMap<GeocodeQueryKey, JobOptions>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<GeocodeQueryKey, JobOptions> eldest) {
+					return size() > MAX_COMPILED;
+				}
+			});
+
+	private final List<Consumer<GeocodeQuery>> setters = new ArrayList<Consumer<GeocodeQuery>>();
+
+	private JobOptions(String matchPrecision, String matchPrecisionNot, String localities,
+			String notLocalities, String centre, String bbox, String interpolation,
+			String locationDescriptor) {
+		if(matchPrecision != null) {
+			addPrecisionSetter(MatchPrecision.parseList(matchPrecision),
+					GeocodeQuery::setMatchPrecision);
+		}
+		if(matchPrecisionNot != null) {
+			addPrecisionSetter(MatchPrecision.parseList(matchPrecisionNot),
+					GeocodeQuery::setMatchPrecisionNot);
+		}
+		List<String> localityList = parseLocalities(localities);
+		if(localityList != null) {
+			addListSetter(localityList, GeocodeQuery::setLocalities);
+		}
+		List<String> notLocalityList = parseLocalities(notLocalities);
+		if(notLocalityList != null) {
+			addListSetter(notLocalityList, GeocodeQuery::setNotLocalities);
+		}
+		if(centre != null && !centre.isEmpty()) {
+			double[] values = GeomParseUtil.parseDoubleArray(centre);
+			// each query gets its own copy, as the query owns the arrays it is given
+			setters.add(q -> q.setCentre(values.clone()));
+		}
+		if(bbox != null && !bbox.isEmpty()) {
+			double[] values = GeomParseUtil.parseDoubleArray(bbox);
+			setters.add(q -> q.setBbox(values.clone()));
+		}
+		if(interpolation != null) {
+			addSetter(Interpolation.convert(interpolation), GeocodeQuery::setInterpolation);
+		}
+		if(locationDescriptor != null) {
+			addSetter(LocationDescriptor.convert(locationDescriptor),
+					GeocodeQuery::setLocationDescriptor);
+		}
+	}
+
+	/**
+	 * Returns the compiled options for the given raw job parameter values, parsing them only if
+	 * they have not been seen recently.
+	 */
+	public static JobOptions compile(String matchPrecision, String matchPrecisionNot,
+			String localities, String notLocalities, String centre, String bbox,
+			String interpolation, String locationDescriptor) {
+		GeocodeQueryKey key = new GeocodeQueryKey(matchPrecision, matchPrecisionNot, localities,
+				notLocalities, centre, bbox, interpolation, locationDescriptor);
+		JobOptions options = COMPILED.get(key);
+		if(options == null) {
+			options = new JobOptions(matchPrecision, matchPrecisionNot, localities, notLocalities,
+					centre, bbox, interpolation, locationDescriptor);
+			COMPILED.putIfAbsent(key, options);
+		}
+		return options;
+	}
+
+	/**
+	 * Sets the parsed parameter values on the query.
+	 *
+	 * @param query the query to set the values on
+	 */
+	public void applyTo(GeocodeQuery query) {
+		for(Consumer<GeocodeQuery> setter : setters) {
+			setter.accept(query);
+		}
+	}
+
+	private <T> void addSetter(T value, BiConsumer<GeocodeQuery, T> setter) {
+		setters.add(q -> setter.accept(q, value));
+	}
+
+	private void addPrecisionSetter(EnumSet<MatchPrecision> value,
+			BiConsumer<GeocodeQuery, EnumSet<MatchPrecision>> setter) {
+		if(value == null) {
+			setters.add(q -> setter.accept(q, null));
+			return;
+		}
+		// each query gets its own copy, as the geocoder may modify the set it is given
+		EnumSet<MatchPrecision> parsed = EnumSet.copyOf(value);
+		setters.add(q -> setter.accept(q, parsed.clone()));
+	}
+
+	private void addListSetter(List<String> value, BiConsumer<GeocodeQuery, List<String>> setter) {
+		// each query gets its own copy, as the query owns the lists it is given
+		setters.add(q -> setter.accept(q, new ArrayList<String>(value)));
+	}
+
+	private static List<String> parseLocalities(String localities) {
+		if(localities == null || localities.isEmpty()) {
+			return null;
+		}
+		return Arrays.asList(localities.toLowerCase().split(","));
+	}
+}
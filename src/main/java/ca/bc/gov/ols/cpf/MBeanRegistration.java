@@ -0,0 +1,39 @@
+package ca.bc.gov.ols.cpf;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * MBeanRegistration registers the plugin's MBeans with the platform MBean server under names made
+ * unique by an "instance" key, so that several plugin contexts in one JVM (eg. the
+ * GeocoderPartitions) each publish their own MBeans rather than replacing each other's.
+ */
+final class MBeanRegistration {
+	private static final AtomicLong INSTANCES = new AtomicLong();
+
+	private MBeanRegistration() {
+	}
+
+	/**
+	 * @param mbean the MBean to register
+	 * @param baseName the object name of the MBean, without the instance key
+	 * @return the name the MBean was registered under
+	 * @throws JMException if the MBean cannot be registered
+	 */
+	static ObjectName register(Object mbean, String baseName) throws JMException {
+		ObjectName name = new ObjectName(baseName + ",instance=" + INSTANCES.incrementAndGet());
+		ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+		return name;
+	}
+
+	/**
+	 * @param name the name returned by register()
+	 * @throws JMException if the MBean cannot be unregistered
+	 */
+	static void unregister(ObjectName name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+	}
+}
@@ -0,0 +1,160 @@
+package ca.bc.gov.ols.cpf;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RegionRouter finds the region of a request from its locality, without geocoding it, so that
+ * jobs can be sharded across worker nodes that each hold the data of only some regions.
+ *
+ * The regions are defined by a CSV file of "localityName,region" records, eg. grouping the
+ * localities of each regional district. The locality is taken from the localityName parameter,
+ * or from the trailing comma-separated parts of the addressString (eg. "Victoria" in "1207
+ * Douglas St, Victoria, BC"); requests whose locality is not listed have no region.
+ *
+ * A worker whose datastore holds only part of the province is configured with the regions it
+ * holds; requests routed to any other region are returned with a NOT_IN_PARTITION fault, and
+ * requests with no region with an UNKNOWN_REGION fault, instead of being geocoded against the
+ * partial data. Without regions, the worker holds all of them.
+ */
+public class RegionRouter {
+	private static final Logger logger = LoggerFactory.getLogger(RegionRouter.class);
+
+	// the number of trailing address parts searched for a locality, eg. "Victoria, BC"
+	private static final int MAX_LOCALITY_PARTS = 3;
+
+	private String localityRegionFile = "";
+	private String regions = "";
+	private Map<String, String> regionsByLocality = Collections.emptyMap();
+	private Set<String> heldRegions;
+
+	/**
+	 * @param localityRegionFile the CSV file of "localityName,region" records; empty for no
+	 *        routing
+	 */
+	public void setLocalityRegionFile(String localityRegionFile) {
+		this.localityRegionFile = localityRegionFile;
+	}
+
+	/**
+	 * @param regions comma-delimited list of the regions held by this worker; empty for all
+	 */
+	public void setRegions(String regions) {
+		this.regions = regions;
+	}
+
+	/**
+	 * Reads the locality regions file and the held regions.
+	 *
+	 * @throws IllegalStateException if regions are held without a locality regions file
+	 */
+	public void load() throws IOException {
+		if(localityRegionFile != null && !localityRegionFile.isEmpty()) {
+			try(Reader in = Files.newBufferedReader(Paths.get(localityRegionFile),
+					StandardCharsets.UTF_8)) {
+				load(in);
+			}
+			logger.info("Loaded regions of {} localities from {}", regionsByLocality.size(),
+					localityRegionFile);
+		}
+		Set<String> held = new HashSet<String>();
+		if(regions != null) {
+			for(String region : regions.split(",")) {
+				if(!region.trim().isEmpty()) {
+					held.add(GeocodeQueryKey.normalize(region));
+				}
+			}
+		}
+		heldRegions = held.isEmpty() ? null : held;
+		if(heldRegions != null) {
+			// without the file, no request could be routed to the held regions
+			if(localityRegionFile == null || localityRegionFile.isEmpty()) {
+				throw new IllegalStateException("regionRouter.regions is set to " + regions
+						+ " without a regionRouter.localityRegionFile");
+			}
+			logger.info("Holding geocoder partition for regions {}", heldRegions);
+		}
+	}
+
+	/**
+	 * Reads the locality regions from CSV text; a header row is skipped.
+	 */
+	void load(Reader in) throws IOException {
+		Map<String, String> map = new HashMap<String, String>();
+		try(CsvReader reader = new CsvReader(in)) {
+			for(List<String> record = reader.readRecord(); record != null; record = reader
+					.readRecord()) {
+				if(record.size() < 2 || "localityName".equalsIgnoreCase(record.get(0).trim())) {
+					continue;
+				}
+				map.put(GeocodeQueryKey.normalize(record.get(0)),
+						GeocodeQueryKey.normalize(record.get(1)));
+			}
+		}
+		regionsByLocality = map;
+	}
+
+	/**
+	 * @return true if this worker holds only some of the regions
+	 */
+	public boolean isPartitioned() {
+		return heldRegions != null;
+	}
+
+	/**
+	 * Finds the region of a request.
+	 *
+	 * @param localityName the request's localityName parameter, or null
+	 * @param addressString the request's addressString parameter, or null
+	 * @return the normalized region name, or null if the locality is not known
+	 */
+	public String route(String localityName, String addressString) {
+		if(regionsByLocality.isEmpty()) {
+			return null;
+		}
+		if(localityName != null && !localityName.isEmpty()) {
+			String region = regionsByLocality.get(GeocodeQueryKey.normalize(localityName));
+			if(region != null) {
+				return region;
+			}
+		}
+		if(addressString == null) {
+			return null;
+		}
+		int end = addressString.length();
+		for(int i = 0; i < MAX_LOCALITY_PARTS; i++) {
+			int start = addressString.lastIndexOf(',', end - 1);
+			if(start < 0) {
+				return null;
+			}
+			String region = regionsByLocality.get(
+					GeocodeQueryKey.normalize(addressString.substring(start + 1, end)));
+			if(region != null) {
+				return region;
+			}
+			end = start;
+		}
+		return null;
+	}
+
+	/**
+	 * @param region a region found by route(), or null
+	 * @return true if requests in the region are geocoded by this worker; requests with no region
+	 *         are only geocoded by workers holding all of them
+	 */
+	public boolean holds(String region) {
+		return heldRegions == null || region != null && heldRegions.contains(region);
+	}
+}
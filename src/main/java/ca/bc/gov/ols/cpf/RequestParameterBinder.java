@@ -0,0 +1,130 @@
+package ca.bc.gov.ols.cpf;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
+import ca.bc.gov.open.cpf.plugin.api.DefaultValue;
+import ca.bc.gov.open.cpf.plugin.api.RequestParameter;
+
+/**
+ * RequestParameterBinder applies a request record, given as a map from request parameter name to
+ * value, to a GeocoderPlugin by calling its RequestParameter setters, in the same way that CPF
+ * does. Missing parameters are given their DefaultValue, and string values are converted to the
+ * type of the setter.
+ */
+public class RequestParameterBinder {
+	private static final Map<String, Method> SETTERS = findSetters();
+
+	/**
+	 * @return the names of all of the request parameters, in index order
+	 */
+	public static Iterable<String> getParameterNames() {
+		return SETTERS.keySet();
+	}
+
+	public static boolean isParameter(String name) {
+		return SETTERS.containsKey(name);
+	}
+
+	/**
+	 * Applies the request parameter values to the plugin.
+	 *
+	 * @param plugin the plugin to set the parameters on
+	 * @param values the parameter values, by parameter name
+	 * @throws IllegalArgumentException if a value cannot be converted to the parameter type
+	 */
+	public static void bind(GeocoderPlugin plugin, Map<String, ?> values) {
+		for(Map.Entry<String, Method> entry : SETTERS.entrySet()) {
+			Method setter = entry.getValue();
+			Object value = values.get(entry.getKey());
+			if(value == null || "".equals(value)) {
+				DefaultValue defaultValue = setter.getAnnotation(DefaultValue.class);
+				if(defaultValue == null) {
+					continue;
+				}
+				value = defaultValue.value();
+			}
+			try {
+				setter.invoke(plugin, convert(entry.getKey(), value, setter.getParameterTypes()[0]));
+			} catch(IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			} catch(InvocationTargetException e) {
+				if(e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException)e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	private static Object convert(String name, Object value, Class<?> type) {
+		if(type.isInstance(value)) {
+			return value;
+		}
+		String s = value.toString().trim();
+		try {
+			if(type == String.class) {
+				return s;
+			} else if(type == int.class || type == Integer.class) {
+				return Integer.valueOf(s);
+			} else if(type == boolean.class || type == Boolean.class) {
+				return Boolean.valueOf(s);
+			} else if(type == Point.class) {
+				return parsePoint(s);
+			}
+		} catch(NumberFormatException | ParseException e) {
+			throw new IllegalArgumentException("Invalid value for " + name + ": " + value, e);
+		}
+		throw new IllegalArgumentException("Unsupported value for " + name + ": " + value);
+	}
+
+	/**
+	 * Parses a point in WKT or EWKT form; only points in BC Albers (EPSG:3005) are accepted as
+	 * there is no reprojection available outside of CPF.
+	 */
+	private static Point parsePoint(String s) throws ParseException {
+		if(s.startsWith("SRID=")) {
+			int semi = s.indexOf(';');
+			if(semi < 0 || !"3005".equals(s.substring(5, semi).trim())) {
+				throw new ParseException("Only SRID=3005 points are supported: " + s);
+			}
+			s = s.substring(semi + 1);
+		}
+		Geometry geom = new WKTReader().read(s);
+		if(!(geom instanceof Point)) {
+			throw new ParseException("Not a point: " + s);
+		}
+		Point p = (Point)geom;
+		return GeocoderPlugin.GEOMETRY_FACTORY.createPoint(p.getX(), p.getY());
+	}
+
+	private static Map<String, Method> findSetters() {
+		Map<Integer, String> namesByIndex = new TreeMap<Integer, String>();
+		Map<String, Method> setters = new HashMap<String, Method>();
+		for(Method method : GeocoderPlugin.class.getMethods()) {
+			RequestParameter param = method.getAnnotation(RequestParameter.class);
+			if(param != null && method.getName().startsWith("set")
+					&& method.getParameterCount() == 1) {
+				String name = Character.toLowerCase(method.getName().charAt(3))
+						+ method.getName().substring(4);
+				namesByIndex.put(param.index(), name);
+				setters.put(name, method);
+			}
+		}
+		Map<String, Method> ordered = new LinkedHashMap<String, Method>();
+		for(String name : namesByIndex.values()) {
+			ordered.put(name, setters.get(name));
+		}
+		return Collections.unmodifiableMap(ordered);
+	}
+}
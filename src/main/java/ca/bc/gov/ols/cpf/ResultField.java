@@ -0,0 +1,132 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * ResultField enumerates the result attributes of an AddressResult, so that a job can select
+ * the subset of them it needs.
+ */
+public enum ResultField {
+	YOUR_ID("yourId", AddressResult::getYourId),
+	FULL_ADDRESS("fullAddress", AddressResult::getFullAddress),
+	INTERSECTION_NAME("intersectionName", AddressResult::getIntersectionName),
+	SCORE("score", AddressResult::getScore),
+	MATCH_PRECISION("matchPrecision", AddressResult::getMatchPrecision),
+	PRECISION_POINTS("precisionPoints", AddressResult::getPrecisionPoints),
+	FAULTS("faults", AddressResult::getFaults),
+	SITE_NAME("siteName", AddressResult::getSiteName),
+	UNIT_DESIGNATOR("unitDesignator", AddressResult::getUnitDesignator),
+	UNIT_NUMBER("unitNumber", AddressResult::getUnitNumber),
+	UNIT_NUMBER_SUFFIX("unitNumberSuffix", AddressResult::getUnitNumberSuffix),
+	CIVIC_NUMBER("civicNumber", AddressResult::getCivicNumber),
+	CIVIC_NUMBER_SUFFIX("civicNumberSuffix", AddressResult::getCivicNumberSuffix),
+	STREET_NAME("streetName", AddressResult::getStreetName),
+	STREET_TYPE("streetType", AddressResult::getStreetType),
+	IS_STREET_TYPE_PREFIX("isStreetTypePrefix", AddressResult::getIsStreetTypePrefix),
+	STREET_DIRECTION("streetDirection", AddressResult::getStreetDirection),
+	IS_STREET_DIRECTION_PREFIX("isStreetDirectionPrefix", AddressResult::getIsStreetDirectionPrefix),
+	STREET_QUALIFIER("streetQualifier", AddressResult::getStreetQualifier),
+	LOCALITY_NAME("localityName", AddressResult::getLocalityName),
+	LOCALITY_TYPE("localityType", AddressResult::getLocalityType),
+	ELECTORAL_AREA("electoralArea", AddressResult::getElectoralArea),
+	PROVINCE_CODE("provinceCode", AddressResult::getProvinceCode),
+	LOCATION("location", AddressResult::getLocation),
+	LOCATION_POSITIONAL_ACCURACY("locationPositionalAccuracy", AddressResult::getLocationPositionalAccuracy),
+	LOCATION_DESCRIPTOR("locationDescriptor", AddressResult::getLocationDescriptor),
+	SITE_ID("siteID", AddressResult::getSiteID),
+	BLOCK_ID("blockID", AddressResult::getBlockID),
+	INTERSECTION_ID("intersectionID", AddressResult::getIntersectionID),
+	FULL_SITE_DESCRIPTOR("fullSiteDescriptor", AddressResult::getFullSiteDescriptor),
+	ACCESS_NOTES("accessNotes", AddressResult::getAccessNotes),
+	SITE_STATUS("siteStatus", AddressResult::getSiteStatus),
+	SITE_RETIRE_DATE("siteRetireDate", AddressResult::getSiteRetireDate),
+	CHANGE_DATE("changeDate", AddressResult::getChangeDate),
+	IS_OFFICIAL("isOfficial", AddressResult::getIsOfficial),
+	DEGREE("degree", AddressResult::getDegree),
+	EXECUTION_TIME("executionTime", AddressResult::getExecutionTime),
+	SID("sid", AddressResult::getSid),
+	CHANGE_STATUS("changeStatus", AddressResult::getChangeStatus),
+	RESOLVE_TIME("resolveTime", AddressResult::getResolveTime),
+	GEOCODE_TIME("geocodeTime", AddressResult::getGeocodeTime),
+	CANDIDATE_COUNT("candidateCount", AddressResult::getCandidateCount),
+	RESULT_SOURCE("resultSource", AddressResult::getResultSource);
+
+	private static final Map<String, ResultField> BY_NAME = new HashMap<String, ResultField>();
+	private static final int MAX_PARSED = 256;
+	// least recently used first, so that the lists of jobs still running are kept
+	private static final Map<String, Set<ResultField>> PARSED = Collections.synchronizedMap(
+			new LinkedHashMap<String, Set<ResultField>>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Set<ResultField>> eldest) {
+					return size() > MAX_PARSED;
+				}
+			});
+
+	static {
+		for(ResultField field : values()) {
+			BY_NAME.put(field.attributeName.toLowerCase(), field);
+		}
+	}
+
+	private final String attributeName;
+	private final Function<AddressResult, Object> getter;
+
+	private ResultField(String attributeName, Function<AddressResult, Object> getter) {
+		this.attributeName = attributeName;
+		this.getter = getter;
+	}
+
+	/**
+	 * @param result the result to get the value from
+	 * @return the value of this attribute of the result, as CPF would read it
+	 */
+	public Object getValue(AddressResult result) {
+		return getter.apply(result);
+	}
+
+	/**
+	 * @return the name of the result attribute, eg. "fullAddress"
+	 */
+	public String getAttributeName() {
+		return attributeName;
+	}
+
+	/**
+	 * Parses a comma-delimited list of result attribute names, ignoring case.
+	 *
+	 * @param list the list of attribute names
+	 * @return the set of fields, or null if the list is empty, meaning all fields
+	 * @throws IllegalArgumentException if any of the names is not a result attribute
+	 */
+	public static Set<ResultField> parseList(String list) {
+		if(list == null || list.trim().isEmpty()) {
+			return null;
+		}
+		Set<ResultField> fields = PARSED.get(list);
+		if(fields == null) {
+			EnumSet<ResultField> set = EnumSet.noneOf(ResultField.class);
+			for(String name : list.split(",")) {
+				name = name.trim();
+				if(name.isEmpty()) {
+					continue;
+				}
+				ResultField field = BY_NAME.get(name.toLowerCase());
+				if(field == null) {
+					throw new IllegalArgumentException("Unknown output field: " + name);
+				}
+				set.add(field);
+			}
+			fields = Collections.unmodifiableSet(set);
+			PARSED.putIfAbsent(list, fields);
+		}
+		return fields;
+	}
+}
@@ -0,0 +1,18 @@
+package ca.bc.gov.ols.cpf;
+
+/**
+ * ResultSource describes where the results of a request came from, as reported in its
+ * diagnostic result attributes.
+ */
+public enum ResultSource {
+	/** geocoded for the request */
+	GEOCODED,
+	/** from the geocoder results of an earlier request, kept in the result cache */
+	CACHE,
+	/** from the persistent result store */
+	STORE,
+	/** shared from a duplicate request in the same group */
+	DEDUP,
+	/** not geocoded within the request's time budget; the result only reports the timeout */
+	TIMED_OUT
+}
@@ -0,0 +1,154 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * SlowQueryLog keeps the slowest recent requests, with their inputs and stage timings, in a
+ * fixed number of slots. A slot is only replaced by a slower request or once its entry is older
+ * than the retention period, and slots are updated with compare-and-set, so recording never
+ * blocks a request; requests faster than every retained entry are rejected after a single read.
+ */
+public class SlowQueryLog {
+	private final AtomicReferenceArray<SlowQuery> slots;
+	private final long retentionNanos;
+	// the fastest retained time, below which requests are not considered until it is rechecked
+	private volatile long thresholdNanos;
+	private volatile long thresholdCheckedNanos;
+
+	/**
+	 * @param size the number of slow requests to keep
+	 * @param retentionMinutes how long a slow request is kept before faster ones can replace it
+	 */
+	public SlowQueryLog(int size, int retentionMinutes) {
+		slots = new AtomicReferenceArray<SlowQuery>(size);
+		retentionNanos = TimeUnit.MINUTES.toNanos(retentionMinutes);
+	}
+
+	/**
+	 * Records a request, if it is slower than the requests already kept.
+	 *
+	 * @param input supplies a description of the request's input, only called if it is kept
+	 */
+	public void record(long resolveNanos, long geocodeNanos, long adaptNanos, boolean timedOut,
+			Supplier<String> input) {
+		long totalNanos = resolveNanos + geocodeNanos + adaptNanos;
+		long now = System.nanoTime();
+		// rechecked every second, so that entries past their retention are replaced
+		if(totalNanos <= thresholdNanos && now - thresholdCheckedNanos < 1000000000L) {
+			return;
+		}
+		SlowQuery query = null;
+		while(true) {
+			// find the slot holding the fastest or an expired entry
+			int victim = -1;
+			long victimNanos = Long.MAX_VALUE;
+			for(int i = 0; i < slots.length(); i++) {
+				SlowQuery entry = slots.get(i);
+				long nanos = entry == null || now - entry.recordedNanos > retentionNanos ? -1
+						: entry.totalNanos;
+				if(nanos < victimNanos) {
+					victim = i;
+					victimNanos = nanos;
+				}
+			}
+			if(victim < 0 || totalNanos <= victimNanos) {
+				thresholdNanos = victimNanos;
+				thresholdCheckedNanos = now;
+				return;
+			}
+			if(query == null) {
+				query = new SlowQuery(now, totalNanos, resolveNanos, geocodeNanos, adaptNanos,
+						timedOut, input.get());
+			}
+			SlowQuery previous = slots.get(victim);
+			long previousNanos = previous == null || now - previous.recordedNanos > retentionNanos
+					? -1 : previous.totalNanos;
+			if(previousNanos == victimNanos && slots.compareAndSet(victim, previous, query)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the retained slow requests, slowest first
+	 */
+	public List<SlowQuery> getSlowQueries() {
+		long now = System.nanoTime();
+		List<SlowQuery> list = new ArrayList<SlowQuery>(slots.length());
+		for(int i = 0; i < slots.length(); i++) {
+			SlowQuery entry = slots.get(i);
+			if(entry != null && now - entry.recordedNanos <= retentionNanos) {
+				list.add(entry);
+			}
+		}
+		list.sort(Comparator.comparingDouble(SlowQuery::getTotalMillis).reversed());
+		return list;
+	}
+
+	public void clear() {
+		for(int i = 0; i < slots.length(); i++) {
+			slots.set(i, null);
+		}
+		thresholdNanos = 0;
+	}
+
+	/**
+	 * One slow request, as published over JMX.
+	 */
+	public static class SlowQuery {
+		private final long recordedNanos;
+		private final long recordedMillis;
+		private final long totalNanos;
+		private final long resolveNanos;
+		private final long geocodeNanos;
+		private final long adaptNanos;
+		private final boolean timedOut;
+		private final String input;
+
+		SlowQuery(long recordedNanos, long totalNanos, long resolveNanos, long geocodeNanos,
+				long adaptNanos, boolean timedOut, String input) {
+			this.recordedNanos = recordedNanos;
+			this.recordedMillis = System.currentTimeMillis();
+			this.totalNanos = totalNanos;
+			this.resolveNanos = resolveNanos;
+			this.geocodeNanos = geocodeNanos;
+			this.adaptNanos = adaptNanos;
+			this.timedOut = timedOut;
+			this.input = input;
+		}
+
+		/** @return when the request completed, in milliseconds since the epoch */
+		public long getTimestamp() {
+			return recordedMillis;
+		}
+
+		public double getTotalMillis() {
+			return totalNanos / 1e6;
+		}
+
+		public double getResolveMillis() {
+			return resolveNanos / 1e6;
+		}
+
+		public double getGeocodeMillis() {
+			return geocodeNanos / 1e6;
+		}
+
+		public double getAdaptMillis() {
+			return adaptNanos / 1e6;
+		}
+
+		public boolean isTimedOut() {
+			return timedOut;
+		}
+
+		public String getInput() {
+			return input;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+import ca.bc.gov.ols.geocoder.data.enumTypes.LocalityType;
+import ca.bc.gov.ols.geocoder.data.enumTypes.LocationDescriptor;
+import ca.bc.gov.ols.geocoder.data.enumTypes.MatchPrecision;
+import ca.bc.gov.ols.geocoder.data.enumTypes.PhysicalStatus;
+import ca.bc.gov.ols.geocoder.data.enumTypes.PositionalAccuracy;
+
+import com.vividsolutions.jts.geom.Point;
+
+public class AddressResultTest {
+	/**
+	 * Creates a result at the given BC Albers location, by reading it from the format written by
+	 * AddressResult.writeTo(), so that no geocoder is needed.
+	 */
+	static AddressResult located(String fullAddress, double x, double y) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(-1);
+		writeString(out, fullAddress);
+		writeString(out, null);
+		out.writeInt(100);
+		writeString(out, "CIVIC_NUMBER");
+		out.writeInt(100);
+		// faults, then siteName to civicNumberSuffix
+		for(int i = 0; i < 7; i++) {
+			writeString(out, null);
+		}
+		// streetName, streetType, isStreetTypePrefix
+		writeString(out, null);
+		writeString(out, null);
+		out.writeByte(-1);
+		// streetDirection, isStreetDirectionPrefix
+		writeString(out, null);
+		out.writeByte(-1);
+		// streetQualifier to provinceCode
+		for(int i = 0; i < 5; i++) {
+			writeString(out, null);
+		}
+		out.writeDouble(x);
+		out.writeDouble(y);
+		// locationPositionalAccuracy to changeDate, with blockID
+		for(int i = 0; i < 3; i++) {
+			writeString(out, null);
+		}
+		out.writeBoolean(false);
+		for(int i = 0; i < 6; i++) {
+			writeString(out, null);
+		}
+		// isOfficial, degree, sid, hasAddress, kmlStylesUrl, lookAtRange
+		out.writeByte(-1);
+		out.writeBoolean(false);
+		out.writeBoolean(false);
+		out.writeBoolean(true);
+		writeString(out, null);
+		writeString(out, null);
+		return AddressResult.readFrom(
+				new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), "1");
+	}
+
+	/**
+	 * Creates a result with every value set, in the same way as located().
+	 */
+	static AddressResult populated() throws IOException {
+		return populated("site-1", "9999-12-31", "2024-03-15");
+	}
+
+	static AddressResult populated(String siteID, String siteRetireDate, String changeDate)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(-1);
+		writeString(out, "Unit 2 -- 1207 Douglas St, Victoria, BC");
+		writeString(out, null);
+		out.writeInt(97);
+		writeString(out, MatchPrecision.values()[0].name());
+		out.writeInt(100);
+		writeString(out, "[STREET_TYPE.missing:1]");
+		writeString(out, "Victoria General Hospital");
+		writeString(out, "Unit");
+		writeString(out, "2");
+		writeString(out, "A");
+		writeString(out, "1207");
+		writeString(out, "B");
+		writeString(out, "Douglas");
+		writeString(out, "St");
+		out.writeByte(0);
+		writeString(out, "N");
+		out.writeByte(1);
+		writeString(out, "Bridge");
+		writeString(out, "Victoria");
+		writeString(out, LocalityType.values()[0].name());
+		writeString(out, "Capital");
+		writeString(out, "BC");
+		out.writeDouble(1195414.8);
+		out.writeDouble(383278.1);
+		writeString(out, PositionalAccuracy.values()[0].name());
+		writeString(out, LocationDescriptor.values()[0].name());
+		writeString(out, siteID);
+		out.writeBoolean(true);
+		out.writeInt(42);
+		writeString(out, "intersection-1");
+		writeString(out, "Block A");
+		writeString(out, "Rear entrance");
+		writeString(out, PhysicalStatus.values()[0].name());
+		writeString(out, siteRetireDate);
+		writeString(out, changeDate);
+		out.writeByte(1);
+		out.writeBoolean(true);
+		out.writeInt(4);
+		out.writeBoolean(true);
+		out.writeInt(7);
+		out.writeBoolean(true);
+		writeString(out, "https://example.org/kml/styles.kml");
+		// an Integer lookAtRange
+		out.writeByte(2);
+		out.writeInt(5000);
+		AddressResult result = AddressResult.readFrom(
+				new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), "1");
+		result.setExecutionTime(new BigDecimal("0.125"));
+		return result;
+	}
+
+	/**
+	 * @return the bytes written by writeTo() for the result
+	 */
+	static byte[] bytes(AddressResult result) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		result.writeTo(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if(s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	@Test
+	public void testLocationSrid() throws IOException {
+		AddressResult result = located("1207 Douglas St, Victoria, BC", 1195414.8, 383278.1);
+		Point location = result.getLocation();
+		// left in BC Albers metres, for CPF to reproject to the job's result SRID
+		assertEquals(GeocoderPlugin.SRID, location.getSRID());
+		assertEquals(1195414.8, location.getX(), 0);
+		assertEquals(383278.1, location.getY(), 0);
+		assertSame(location, result.getLocation());
+	}
+
+	@Test
+	public void testNoLocation() {
+		assertNull(AddressResult.timedOut("1", 1000).getLocation());
+	}
+
+	@Test
+	public void testUnchanged() throws IOException {
+		// an active site, with the far future retire date of the address data
+		AddressResult result = populated();
+		result.compareToPrevious("site-1", LocalDate.of(2024, 3, 15));
+		assertEquals(ChangeStatus.UNCHANGED, result.getChangeStatus());
+	}
+
+	@Test
+	public void testChanged() throws IOException {
+		AddressResult result = populated();
+		result.compareToPrevious("site-2", null);
+		assertEquals(ChangeStatus.CHANGED, result.getChangeStatus());
+
+		result = populated();
+		result.compareToPrevious("site-1", LocalDate.of(2024, 1, 1));
+		assertEquals(ChangeStatus.CHANGED, result.getChangeStatus());
+	}
+
+	@Test
+	public void testRetired() throws IOException {
+		AddressResult result = populated("site-1", "2020-06-30", "2020-06-30");
+		result.compareToPrevious("site-1", LocalDate.of(2019, 1, 1));
+		assertEquals(ChangeStatus.RETIRED, result.getChangeStatus());
+	}
+}
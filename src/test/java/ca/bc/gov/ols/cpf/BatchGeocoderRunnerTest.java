@@ -0,0 +1,131 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class BatchGeocoderRunnerTest {
+	/**
+	 * Stands in for a plugin executing a request, taking longer for lower-numbered addresses, and
+	 * failing for the address "fail".
+	 */
+	private static class StandInPlugin extends GeocoderPlugin {
+		private String address;
+		private List<AddressResult> results;
+
+		@Override
+		public void setAddressString(String addressString) {
+			super.setAddressString(addressString);
+			address = addressString;
+		}
+
+		@Override
+		public void execute() {
+			if("fail".equals(address)) {
+				throw new IllegalStateException("Unable to geocode \"" + address + "\"");
+			}
+			try {
+				Thread.sleep(50 - 5 * Integer.parseInt(address));
+				results = Collections.singletonList(AddressResultTest.located(address, 0, 0));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public List<AddressResult> getResults() {
+			return results != null ? results : super.getResults();
+		}
+	}
+
+	private static String geocode(String csv, String... args) throws Exception {
+		BatchGeocoderRunner runner = new BatchGeocoderRunner();
+		runner.parseArgs(args);
+		GeocoderBatchExecutor executor = new GeocoderBatchExecutor();
+		executor.setParallelism(4);
+		executor.setPluginFactory(StandInPlugin::new);
+		ExecutorService workers = Executors.newFixedThreadPool(2);
+		try(CsvReader reader = new CsvReader(new StringReader(csv))) {
+			StringWriter out = new StringWriter();
+			runner.geocode(reader, out, executor, workers);
+			return out.toString();
+		} finally {
+			workers.shutdownNow();
+			executor.shutdown();
+		}
+	}
+
+	private static void assertRejected(String... args) {
+		try {
+			new BatchGeocoderRunner().parseArgs(args);
+			fail("the arguments were accepted");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testParseArgs() {
+		new BatchGeocoderRunner().parseArgs(new String[] {"--input", "in.csv", "--output",
+				"out.csv", "--threads", "2", "--batch", "10", "--param", "maxResults=3", "--set",
+				"geocodeResultCache.maxSize=0", "--progress", "0"});
+		assertRejected();
+		assertRejected("--output", "out.csv");
+		assertRejected("--input");
+		assertRejected("--input", "in.csv", "--verbose", "true");
+		assertRejected("--input", "in.csv", "--param", "notAParameter=1");
+		assertRejected("--input", "in.csv", "--param", "=1");
+		assertRejected("--input", "in.csv", "--threads", "many");
+	}
+
+	@Test
+	public void testAppendField() {
+		StringBuilder sb = new StringBuilder();
+		BatchGeocoderRunner.appendField(sb, "1207 Douglas St");
+		sb.append('|');
+		BatchGeocoderRunner.appendField(sb, "Douglas St, Victoria");
+		sb.append('|');
+		BatchGeocoderRunner.appendField(sb, "the \"big\" one");
+		sb.append('|');
+		BatchGeocoderRunner.appendField(sb, "two\nlines");
+		assertEquals("1207 Douglas St|\"Douglas St, Victoria\"|\"the \"\"big\"\" one\"|\"two\nlines\"",
+				sb.toString());
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		StringBuilder csv = new StringBuilder("addressString,notAParameter\n");
+		StringBuilder expected = new StringBuilder("inputRow,fullAddress,error\n");
+		for(int i = 1; i <= 9; i++) {
+			csv.append(i).append(",x\n");
+			expected.append(i).append(',').append(i).append(",\n");
+		}
+		// the earlier requests of each batch, and the earlier batches, complete last
+		assertEquals(expected.toString(), geocode(csv.toString(), "--input", "in.csv",
+				"--batch", "2", "--param", "outputFields=fullAddress"));
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		String csv = "addressString,maxResults\n1,\nfail,\n3,many\n4,\n";
+		// the failure of one request in a batch leaves the others with their results
+		assertEquals("inputRow,fullAddress,error\n"
+				+ "1,1,\n"
+				+ "2,,\"Unable to geocode \"\"fail\"\"\"\n"
+				+ "3,,Invalid value for maxResults: many\n"
+				+ "4,4,\n", geocode(csv, "--input", "in.csv", "--batch", "3", "--param",
+						"outputFields=fullAddress"));
+	}
+}
@@ -0,0 +1,62 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CsvReaderTest {
+	private static CsvReader reader(String csv) {
+		return new CsvReader(new StringReader(csv));
+	}
+
+	@Test
+	public void testFields() throws IOException {
+		try(CsvReader reader = reader("yourId,addressString\n1,1207 Douglas St\n")) {
+			assertEquals(Arrays.asList("yourId", "addressString"), reader.readRecord());
+			assertEquals(Arrays.asList("1", "1207 Douglas St"), reader.readRecord());
+			assertNull(reader.readRecord());
+		}
+	}
+
+	@Test
+	public void testQuoted() throws IOException {
+		try(CsvReader reader = reader("\"1207 Douglas St, Victoria\",\"the \"\"big\"\" one\"\n"
+				+ "\"line\nbreak\",")) {
+			assertEquals(Arrays.asList("1207 Douglas St, Victoria", "the \"big\" one"),
+					reader.readRecord());
+			assertEquals(Arrays.asList("line\nbreak", ""), reader.readRecord());
+			assertNull(reader.readRecord());
+		}
+	}
+
+	@Test
+	public void testLineEndings() throws IOException {
+		try(CsvReader reader = reader("a,b\r\nc\rd\n")) {
+			assertEquals(Arrays.asList("a", "b"), reader.readRecord());
+			assertEquals(Arrays.asList("c"), reader.readRecord());
+			assertEquals(Arrays.asList("d"), reader.readRecord());
+			assertNull(reader.readRecord());
+		}
+	}
+
+	@Test
+	public void testBlankLines() throws IOException {
+		try(CsvReader reader = reader("\n\r\na\n\n\r\nb\n\n")) {
+			assertEquals(Arrays.asList("a"), reader.readRecord());
+			assertEquals(Arrays.asList("b"), reader.readRecord());
+			assertNull(reader.readRecord());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnterminatedQuote() throws IOException {
+		try(CsvReader reader = reader("\"1207 Douglas St\n")) {
+			reader.readRecord();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DeadlineExecutorTest {
+	private final DeadlineExecutor executor = new DeadlineExecutor();
+
+	@After
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testDisabled() throws TimeoutException {
+		// off by default, so the task runs on the calling thread
+		assertEquals(0, executor.getTimeoutMillis());
+		assertSame(Thread.currentThread(), executor.call(Thread::currentThread));
+	}
+
+	@Test
+	public void testResult() throws TimeoutException {
+		executor.setTimeoutMillis(5000);
+		assertNotSame(Thread.currentThread(), executor.call(Thread::currentThread));
+		assertEquals(0, executor.getFallbacks());
+	}
+
+	@Test
+	public void testTimeout() throws InterruptedException {
+		executor.setTimeoutMillis(50);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			executor.call(() -> release.await(10, TimeUnit.SECONDS));
+			fail("the task did not time out");
+		} catch(TimeoutException e) {
+			// expected
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testFailure() throws TimeoutException {
+		executor.setTimeoutMillis(5000);
+		try {
+			executor.call(() -> {
+				throw new IllegalArgumentException("bad request");
+			});
+			fail("the failure was not rethrown");
+		} catch(IllegalArgumentException e) {
+			assertEquals("bad request", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testFallback() throws Exception {
+		executor.setTimeoutMillis(50);
+		executor.setMaxThreads(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			// leaves the only geocoding thread busy with a timed out task
+			executor.call(() -> release.await(10, TimeUnit.SECONDS));
+			fail("the task did not time out");
+		} catch(TimeoutException e) {
+			// expected
+		}
+		try {
+			assertSame(Thread.currentThread(), executor.call(Thread::currentThread));
+			assertEquals(1, executor.getFallbacks());
+			executor.resetStatistics();
+			assertEquals(0, executor.getFallbacks());
+		} finally {
+			release.countDown();
+		}
+	}
+}
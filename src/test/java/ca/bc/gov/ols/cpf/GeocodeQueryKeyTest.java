@@ -0,0 +1,31 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class GeocodeQueryKeyTest {
+
+	@Test
+	public void testNormalize() {
+		assertEquals("", GeocodeQueryKey.normalize(null));
+		assertEquals("", GeocodeQueryKey.normalize("  \t "));
+		assertEquals("525 superior st, victoria, bc",
+				GeocodeQueryKey.normalize("  525  SUPERIOR St,\tVictoria,  BC "));
+	}
+
+	@Test
+	public void testEquality() {
+		GeocodeQueryKey a = new GeocodeQueryKey(GeocodeQueryKey.normalize("1207 Douglas St"), 1, 0,
+				null, new double[] {1, 2});
+		GeocodeQueryKey b = new GeocodeQueryKey(GeocodeQueryKey.normalize("1207  douglas st "), 1,
+				0, null, new double[] {1, 2});
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertNotEquals(a, new GeocodeQueryKey(GeocodeQueryKey.normalize("1207 Douglas St"), 5, 0,
+				null, new double[] {1, 2}));
+		assertNotEquals(a, new GeocodeQueryKey(GeocodeQueryKey.normalize("1207 Douglas St"), 1, 0,
+				null, new double[] {1, 3}));
+	}
+}
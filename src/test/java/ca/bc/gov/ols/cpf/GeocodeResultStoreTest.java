@@ -0,0 +1,150 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GeocodeResultStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GeocodeResultStore open(String datasetVersion) {
+		GeocodeResultStore store = new GeocodeResultStore();
+		store.setDirectory(folder.getRoot().getPath());
+		store.setDatasetVersion(datasetVersion);
+		store.open();
+		return store;
+	}
+
+	@Test
+	public void testDisabled() {
+		GeocodeResultStore store = new GeocodeResultStore();
+		store.open();
+		assertFalse(store.isEnabled());
+	}
+
+	@Test
+	public void testReopen() {
+		GeocodeQueryKey key = new GeocodeQueryKey("1207 douglas st", 1);
+		GeocodeResultStore store = open("2024-01");
+		assertTrue(store.isEnabled());
+		assertNull(store.get(key, "a"));
+		store.put(key, Collections.<AddressResult> emptyList());
+		assertNotNull(store.get(key, "a"));
+		store.close();
+
+		store = open("2024-01");
+		assertEquals(1, store.getSize());
+		assertEquals(0, store.get(key, "b").size());
+		assertNull(store.get(new GeocodeQueryKey("1207 douglas st", 2), "b"));
+		store.close();
+	}
+
+	@Test
+	public void testDatasetChange() {
+		GeocodeQueryKey key = new GeocodeQueryKey("1207 douglas st", 1);
+		GeocodeResultStore store = open("2024-01");
+		store.put(key, Collections.<AddressResult> emptyList());
+		store.close();
+
+		store = open("2024-02");
+		assertEquals(0, store.getSize());
+		assertNull(store.get(key, "a"));
+		store.close();
+	}
+
+	@Test
+	public void testReload() {
+		GeocodeQueryKey key = new GeocodeQueryKey("1207 douglas st", 1);
+		GeocodeResultStore store = open("2024-01");
+		store.checkVersion(1);
+		store.put(key, Collections.<AddressResult> emptyList());
+		store.checkVersion(1);
+		assertEquals(1, store.getSize());
+		store.checkVersion(2);
+		assertEquals(0, store.getSize());
+		store.close();
+	}
+
+	@Test
+	public void testCompact() {
+		GeocodeResultStore store = new GeocodeResultStore();
+		store.setDirectory(folder.getRoot().getPath());
+		store.setDatasetVersion("2024-01");
+		store.setMaxBytes(4096);
+		store.open();
+		for(int i = 0; i < 200; i++) {
+			store.put(new GeocodeQueryKey("address " + i, 1),
+					Collections.<AddressResult> emptyList());
+		}
+		assertTrue(store.isEnabled());
+		assertTrue(store.getSize() < 200);
+		assertTrue(store.getBytes() <= 4096);
+		GeocodeQueryKey newest = new GeocodeQueryKey("address 199", 1);
+		assertNotNull(store.get(newest, "a"));
+		int size = store.getSize();
+		store.close();
+
+		store = open("2024-01");
+		assertEquals(size, store.getSize());
+		assertNotNull(store.get(newest, "a"));
+		store.close();
+	}
+
+	@Test
+	public void testNoDatasetVersion() {
+		GeocodeResultStore store = open("");
+		assertFalse(store.isEnabled());
+	}
+
+	@Test
+	public void testDigest() {
+		// equal in their toString() form
+		assertEquals(new GeocodeQueryKey("a, b", "c").toString(),
+				new GeocodeQueryKey("a", "b, c").toString());
+		assertNotEquals(GeocodeResultStore.digest(new GeocodeQueryKey("a, b", "c")),
+				GeocodeResultStore.digest(new GeocodeQueryKey("a", "b, c")));
+		assertNotEquals(GeocodeResultStore.digest(new GeocodeQueryKey(1)),
+				GeocodeResultStore.digest(new GeocodeQueryKey("1")));
+		assertEquals(GeocodeResultStore.digest(new GeocodeQueryKey("a", new double[] {1, 2})),
+				GeocodeResultStore.digest(new GeocodeQueryKey("a", new double[] {1, 2})));
+	}
+
+	@Test
+	public void testPopulated() throws IOException {
+		GeocodeQueryKey key = new GeocodeQueryKey("1207 douglas st", 1);
+		AddressResult result = AddressResultTest.populated();
+		GeocodeResultStore store = open("2024-01");
+		store.put(key, Collections.singletonList(result));
+		store.close();
+
+		store = open("2024-01");
+		List<AddressResult> stored = store.get(key, "b");
+		store.close();
+		assertEquals(1, stored.size());
+		AddressResult read = stored.get(0);
+		assertArrayEquals(AddressResultTest.bytes(result), AddressResultTest.bytes(read));
+		assertEquals("b", read.getYourId());
+		// the execution time belongs to the request, so is not stored
+		assertNull(read.getExecutionTime());
+		assertEquals(result.getMatchPrecision(), read.getMatchPrecision());
+		assertEquals(result.getSiteStatus(), read.getSiteStatus());
+		assertEquals(LocalDate.of(9999, 12, 31), read.getSiteRetireDate());
+		assertEquals(LocalDate.of(2024, 3, 15), read.getChangeDate());
+		assertEquals(5000, read.getCustomizationProperties().get("kmlLookAtMinRange"));
+		assertEquals(result.getLocation().getX(), read.getLocation().getX(), 0);
+	}
+}
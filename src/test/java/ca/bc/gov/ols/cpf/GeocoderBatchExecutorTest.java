@@ -0,0 +1,174 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class GeocoderBatchExecutorTest {
+	/**
+	 * Stands in for a plugin executing a request, taking longer for lower-numbered addresses, and
+	 * failing for the address "fail".
+	 */
+	private static class StandInPlugin extends GeocoderPlugin {
+		private final AtomicInteger running;
+		private final AtomicInteger maxRunning;
+		private final AtomicInteger executed;
+		private String address;
+		private String id;
+		private List<AddressResult> results;
+
+		StandInPlugin(AtomicInteger running, AtomicInteger maxRunning, AtomicInteger executed) {
+			this.running = running;
+			this.maxRunning = maxRunning;
+			this.executed = executed;
+		}
+
+		@Override
+		public void setAddressString(String addressString) {
+			super.setAddressString(addressString);
+			address = addressString;
+		}
+
+		@Override
+		public void setYourId(String yourId) {
+			super.setYourId(yourId);
+			id = yourId;
+		}
+
+		@Override
+		public void execute() {
+			executed.incrementAndGet();
+			if("fail".equals(address)) {
+				throw new IllegalStateException("Unable to geocode " + address);
+			}
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(200 - 20 * Integer.parseInt(address));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				running.decrementAndGet();
+			}
+			results = Collections.singletonList(AddressResult.timedOut(id, 0));
+		}
+
+		@Override
+		public List<AddressResult> getResults() {
+			// duplicates are given their results by shareResults()
+			return results != null ? results : super.getResults();
+		}
+	}
+
+	private static GeocoderBatchExecutor executor(int parallelism, AtomicInteger maxRunning) {
+		return executor(parallelism, maxRunning, new AtomicInteger());
+	}
+
+	private static GeocoderBatchExecutor executor(int parallelism, AtomicInteger maxRunning,
+			AtomicInteger executed) {
+		AtomicInteger running = new AtomicInteger();
+		GeocoderBatchExecutor executor = new GeocoderBatchExecutor();
+		executor.setParallelism(parallelism);
+		executor.setPluginFactory(() -> new StandInPlugin(running, maxRunning, executed));
+		return executor;
+	}
+
+	private static GeocoderPlugin plugin(GeocoderBatchExecutor executor, String address,
+			String yourId) {
+		GeocoderPlugin plugin = executor.createPlugin();
+		plugin.setAddressString(address);
+		plugin.setYourId(yourId);
+		return plugin;
+	}
+
+	private static List<Map<String, String>> requests(int count) {
+		List<Map<String, String>> requests = new ArrayList<Map<String, String>>();
+		for(int i = 0; i < count; i++) {
+			Map<String, String> request = new HashMap<String, String>();
+			request.put("addressString", String.valueOf(i));
+			request.put("yourId", "id" + i);
+			requests.add(request);
+		}
+		return requests;
+	}
+
+	@Test
+	public void testOrder() {
+		GeocoderBatchExecutor executor = executor(4, new AtomicInteger());
+		try {
+			// the first requests are the slowest, so complete last
+			List<List<AddressResult>> results = executor.geocodeAll(requests(8));
+			assertEquals(8, results.size());
+			for(int i = 0; i < 8; i++) {
+				assertEquals("id" + i, results.get(i).get(0).getYourId());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testParallelism() {
+		AtomicInteger maxRunning = new AtomicInteger();
+		GeocoderBatchExecutor executor = executor(4, maxRunning);
+		try {
+			executor.geocodeAll(requests(8));
+			assertTrue("requests ran one at a time", maxRunning.get() > 1);
+			assertTrue("more requests ran than threads", maxRunning.get() <= 4);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testDuplicates() {
+		AtomicInteger executed = new AtomicInteger();
+		GeocoderBatchExecutor executor = executor(4, new AtomicInteger(), executed);
+		try {
+			List<GeocoderPlugin> plugins = Arrays.asList(plugin(executor, "1", "a"),
+					plugin(executor, "2", "b"), plugin(executor, "1", "c"));
+			assertEquals(1, executor.executeAll(plugins));
+			assertEquals(2, executed.get());
+			assertEquals("a", plugins.get(0).getResults().get(0).getYourId());
+			assertEquals("b", plugins.get(1).getResults().get(0).getYourId());
+			// the duplicate shares the first request's results, with its own yourId
+			assertEquals("c", plugins.get(2).getResults().get(0).getYourId());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFailure() {
+		GeocoderBatchExecutor executor = executor(4, new AtomicInteger());
+		try {
+			List<GeocoderPlugin> plugins = Arrays.asList(plugin(executor, "fail", "a"),
+					plugin(executor, "1", "b"), plugin(executor, "fail", "c"));
+			try {
+				executor.executeAll(plugins);
+				fail("the failure was not thrown");
+			} catch(IllegalStateException e) {
+				assertSame(e, plugins.get(0).getFailure());
+			}
+			assertNull(plugins.get(0).getResults());
+			// the duplicate of the failed request fails with it, rather than having no results
+			assertSame(plugins.get(0).getFailure(), plugins.get(2).getFailure());
+			assertNull(plugins.get(2).getResults());
+			assertNull(plugins.get(1).getFailure());
+			assertEquals("b", plugins.get(1).getResults().get(0).getYourId());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
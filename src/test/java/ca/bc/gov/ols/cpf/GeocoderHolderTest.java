@@ -0,0 +1,236 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+import ca.bc.gov.ols.geocoder.GeocoderFactory;
+import ca.bc.gov.ols.geocoder.IGeocoder;
+
+public class GeocoderHolderTest {
+	/**
+	 * Stands in for a configuration store, loading the dummy geocoder after a delay or failing.
+	 */
+	private static class StandInFactory extends GeocoderFactory {
+		private final long delayMillis;
+		private volatile boolean failing;
+
+		StandInFactory(long delayMillis, boolean failing) {
+			this.delayMillis = delayMillis;
+			this.failing = failing;
+			GeometryFactory gf = new GeometryFactory(new PrecisionModel(1000), GeocoderPlugin.SRID);
+			setGeometryFactory(gf);
+			setGeometryReprojector(new CpfGeometryReprojector(gf));
+			setDummyMode(true);
+		}
+
+		@Override
+		public IGeocoder getGeocoder() {
+			try {
+				Thread.sleep(delayMillis);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if(failing) {
+				throw new IllegalStateException("Configuration store unreachable");
+			}
+			return super.getGeocoder();
+		}
+	}
+
+	/**
+	 * Creates a new stand-in geocoder on each load, so that the swapped out one can be tracked.
+	 */
+	private static class ProxyFactory extends GeocoderFactory {
+		@Override
+		public IGeocoder getGeocoder() {
+			return proxy();
+		}
+	}
+
+	private static IGeocoder proxy() {
+		return (IGeocoder)Proxy.newProxyInstance(IGeocoder.class.getClassLoader(),
+				new Class<?>[] {IGeocoder.class}, (p, method, args) -> {
+					if(method.getName().equals("equals")) {
+						return p == args[0];
+					}
+					if(method.getName().equals("hashCode")) {
+						return System.identityHashCode(p);
+					}
+					return null;
+				});
+	}
+
+	private static GeocoderHolder holder(GeocoderFactory primary, int pollSeconds) {
+		GeocoderHolder holder = new GeocoderHolder();
+		holder.setGeocoderFactory(primary);
+		holder.setSnapshotGeocoderFactory(new StandInFactory(0, false));
+		holder.setSnapshotEnabled(true);
+		holder.setPrimaryTimeoutSeconds(1);
+		holder.setPollSeconds(pollSeconds);
+		return holder;
+	}
+
+	private static void awaitPrimary(GeocoderHolder holder) throws InterruptedException {
+		for(int i = 0; i < 100 && !GeocoderHolder.PRIMARY.equals(holder.getConfigurationSource()); i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(GeocoderHolder.PRIMARY, holder.getConfigurationSource());
+	}
+
+	private static void awaitSwap(GeocoderHolder holder, long version) throws InterruptedException {
+		for(int i = 0; i < 100 && holder.getVersion() == version; i++) {
+			Thread.sleep(100);
+		}
+	}
+
+	@Test
+	public void testPrimary() {
+		GeocoderHolder holder = holder(new StandInFactory(0, false), 60);
+		holder.setSnapshotEnabled(false);
+		holder.start();
+		try {
+			assertEquals(GeocoderHolder.PRIMARY, holder.getConfigurationSource());
+			assertNotNull(holder.getGeocoder());
+		} finally {
+			holder.shutdown();
+		}
+	}
+
+	@Test
+	public void testSlowPrimary() throws InterruptedException {
+		GeocoderHolder holder = holder(new StandInFactory(3000, false), 60);
+		holder.start();
+		try {
+			assertEquals(GeocoderHolder.SNAPSHOT, holder.getConfigurationSource());
+			long snapshotVersion = holder.getVersion();
+			long datasetVersion = holder.getDatasetVersion();
+			awaitPrimary(holder);
+			assertEquals(snapshotVersion + 1, holder.getVersion());
+			// the primary replaces the snapshot of the same dataset, so keeps the result store
+			assertEquals(datasetVersion, holder.getDatasetVersion());
+			assertTrue(holder.reload());
+			awaitSwap(holder, snapshotVersion + 1);
+			assertTrue(holder.getDatasetVersion() > datasetVersion);
+		} finally {
+			holder.shutdown();
+		}
+	}
+
+	@Test
+	public void testSnapshotFirst() {
+		GeocoderHolder holder = holder(new StandInFactory(5000, false), 60);
+		holder.setPrimaryTimeoutSeconds(0);
+		long start = System.nanoTime();
+		holder.start();
+		try {
+			// starts without waiting on the primary store
+			assertTrue(System.nanoTime() - start < 2000000000L);
+			assertEquals(GeocoderHolder.SNAPSHOT, holder.getConfigurationSource());
+			assertTrue(holder.isReloading());
+			// the primary load is not doubled up by a reload
+			assertFalse(holder.reload());
+		} finally {
+			holder.shutdown();
+		}
+	}
+
+	@Test
+	public void testUnreachablePrimary() throws InterruptedException {
+		StandInFactory primary = new StandInFactory(0, true);
+		GeocoderHolder holder = holder(primary, 1);
+		holder.start();
+		try {
+			assertEquals(GeocoderHolder.SNAPSHOT, holder.getConfigurationSource());
+			primary.failing = false;
+			awaitPrimary(holder);
+		} finally {
+			holder.shutdown();
+		}
+	}
+
+	@Test
+	public void testPrimaryError() throws InterruptedException {
+		AtomicBoolean failed = new AtomicBoolean();
+		GeocoderHolder holder = holder(new GeocoderFactory() {
+			@Override
+			public IGeocoder getGeocoder() {
+				if(failed.compareAndSet(false, true)) {
+					throw new OutOfMemoryError("Java heap space");
+				}
+				return proxy();
+			}
+		}, 1);
+		holder.start();
+		try {
+			// an error is retried like any other failure, rather than leaving the holder reloading
+			awaitPrimary(holder);
+			assertTrue(failed.get());
+			assertFalse(holder.isReloading());
+		} finally {
+			holder.shutdown();
+		}
+	}
+
+	@Test
+	public void testUnreadableSnapshot() {
+		GeocoderHolder holder = holder(new ProxyFactory(), 60);
+		holder.setSnapshotGeocoderFactory(new StandInFactory(0, true));
+		holder.start();
+		try {
+			// loaded from the primary store before starting, as without a snapshot
+			assertEquals(GeocoderHolder.PRIMARY, holder.getConfigurationSource());
+			assertNotNull(holder.getGeocoder());
+			assertFalse(holder.isReloading());
+		} finally {
+			holder.shutdown();
+		}
+	}
+
+	@Test
+	public void testSwapReleasesGeocoder() throws InterruptedException {
+		GeocoderHolder holder = new GeocoderHolder();
+		holder.setGeocoderFactory(new ProxyFactory());
+		holder.start();
+		try {
+			GeocoderHolder.Lease lease = holder.acquire();
+			WeakReference<IGeocoder> old = new WeakReference<IGeocoder>(lease.getGeocoder());
+			long version = holder.getVersion();
+			assertTrue(holder.reload());
+			awaitSwap(holder, version);
+			// the request holding the lease finishes with the old geocoder
+			assertSame(old.get(), lease.getGeocoder());
+			assertEquals(1, holder.getRetiringGeocoders());
+			lease.close();
+			assertEquals(0, holder.getRetiringGeocoders());
+			assertNull(lease.getGeocoder());
+			for(int i = 0; i < 100 && old.get() != null; i++) {
+				System.gc();
+				Thread.sleep(10);
+			}
+			assertNull("the old geocoder is still reachable", old.get());
+		} finally {
+			holder.shutdown();
+		}
+	}
+
+	@Test
+	public void testFixedHolder() {
+		IGeocoder geocoder = proxy();
+		GeocoderHolder holder = GeocoderHolder.fixed(geocoder);
+		// plugins given the same geocoder share the holder, and so the cached results
+		assertSame(holder, GeocoderHolder.fixed(geocoder));
+		assertTrue(holder.getVersion() != GeocoderHolder.fixed(proxy()).getVersion());
+	}
+}
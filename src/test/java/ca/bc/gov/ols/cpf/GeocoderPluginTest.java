@@ -1,13 +1,21 @@
 package ca.bc.gov.ols.cpf;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import ca.bc.gov.open.cpf.plugin.impl.BusinessApplicationPluginExecutor;
+import ca.bc.gov.ols.geocoder.IGeocoder;
 
 public class GeocoderPluginTest {
 	private static BusinessApplicationPluginExecutor bape;
@@ -51,4 +59,81 @@ public class GeocoderPluginTest {
 		List<Map<String, Object>> results = bape.executeList(GeocoderPlugin.PLUGIN_NAME, params);
 		System.out.println(results.toString());
 	}
+	
+	@Test
+	public void testEchoQueryKey() {
+		GeocoderPlugin a = new GeocoderPlugin();
+		a.setSiteName("Victoria General Hospital");
+		GeocoderPlugin b = new GeocoderPlugin();
+		b.setSiteName("VICTORIA  general hospital");
+		assertEquals(a.getQueryKey(), b.getQueryKey());
+		// echoed fields come back as given, so only identical requests share results
+		a.setEcho("true");
+		b.setEcho("true");
+		assertNotEquals(a.getQueryKey(), b.getQueryKey());
+	}
+	
+	@Test
+	public void testTimeoutDiagnostics() {
+		DeadlineExecutor deadlineExecutor = new DeadlineExecutor();
+		deadlineExecutor.setTimeoutMillis(50);
+		CountDownLatch release = new CountDownLatch(1);
+		IGeocoder geocoder = (IGeocoder)Proxy.newProxyInstance(IGeocoder.class.getClassLoader(),
+				new Class<?>[] {IGeocoder.class}, (p, method, args) -> {
+					switch(method.getName()) {
+						case "geocode":
+							release.await();
+							return null;
+						case "equals":
+							return p == args[0];
+						case "hashCode":
+							return System.identityHashCode(p);
+						default:
+							return null;
+					}
+				});
+		try {
+			GeocoderPlugin plugin = new GeocoderPlugin();
+			plugin.setGeocoder(geocoder);
+			plugin.setDeadlineExecutor(deadlineExecutor);
+			plugin.setAddressString("1207 Douglas St");
+			plugin.setDiagnostics(true);
+			plugin.execute();
+			List<AddressResult> results = plugin.getResults();
+			assertEquals(1, results.size());
+			assertTrue(results.get(0).getFaults().startsWith("TIMED_OUT"));
+			assertEquals(ResultSource.TIMED_OUT, results.get(0).getResultSource());
+			assertEquals(Integer.valueOf(0), results.get(0).getCandidateCount());
+		} finally {
+			release.countDown();
+			deadlineExecutor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testOutputFieldsKey() {
+		GeocoderPlugin a = new GeocoderPlugin();
+		a.setAddressString("1207 Douglas St");
+		GeocoderPlugin b = new GeocoderPlugin();
+		b.setAddressString("1207 Douglas St");
+		b.setOutputFields("fullAddress,score");
+		// the matches are the same, but the results are not
+		assertEquals(a.getQueryKey(), b.getQueryKey());
+		assertNotEquals(a.getResultKey(), b.getResultKey());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownOutputField() {
+		new GeocoderPlugin().setOutputFields("fullAddress,nonsense");
+	}
+	
+	@Test
+	public void testInvalidPreviousChangeDate() {
+		try {
+			new GeocoderPlugin().setPreviousChangeDate("2024-13-45");
+			fail("the invalid date was accepted");
+		} catch(IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("previousChangeDate"));
+		}
+	}
 }
@@ -0,0 +1,89 @@
+package ca.bc.gov.ols.cpf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram records latencies in nanoseconds into log-linear buckets (16 linear
+ * sub-buckets per power of two, so within about 6%), without locking, so that many threads can
+ * record into the same histogram.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 4;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(60 * SUB_COUNT);
+	private final LongAdder total = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(indexOf(nanos));
+		total.increment();
+		sum.add(nanos);
+		max.accumulateAndGet(nanos, Math::max);
+	}
+
+	public long getCount() {
+		return total.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : (double)sum.sum() / count;
+	}
+
+	/**
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the approximate latency at the percentile, in nanoseconds
+	 */
+	public long getPercentile(double percentile) {
+		long count = getCount();
+		if(count == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long)Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for(int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if(seen >= target) {
+				return Math.min(max.get(), midpointOf(i));
+			}
+		}
+		return max.get();
+	}
+
+	static int indexOf(long value) {
+		if(value < SUB_COUNT) {
+			return (int)value;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+		return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	static long lowerBoundOf(int index) {
+		if(index < SUB_COUNT) {
+			return index;
+		}
+		int exp = index / SUB_COUNT + SUB_BITS - 1;
+		int sub = index % SUB_COUNT;
+		return (long)(SUB_COUNT + sub) << (exp - SUB_BITS);
+	}
+
+	private static long midpointOf(int index) {
+		if(index < SUB_COUNT) {
+			return index;
+		}
+		int exp = index / SUB_COUNT + SUB_BITS - 1;
+		return lowerBoundOf(index) + ((1L << (exp - SUB_BITS)) >>> 1);
+	}
+}
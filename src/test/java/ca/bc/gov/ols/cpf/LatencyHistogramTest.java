@@ -0,0 +1,31 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		for(long v : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123456789L, Long.MAX_VALUE / 2}) {
+			int index = LatencyHistogram.indexOf(v);
+			assertTrue(LatencyHistogram.lowerBoundOf(index) <= v);
+			assertTrue(LatencyHistogram.lowerBoundOf(index + 1) > v);
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000L, histogram.getMax());
+		assertEquals(500000, histogram.getPercentile(50), 500000 * 0.07);
+		assertEquals(990000, histogram.getPercentile(99), 990000 * 0.07);
+		assertEquals(500500, histogram.getMean(), 0.001);
+	}
+}
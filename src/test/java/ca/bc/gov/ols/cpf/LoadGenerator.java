@@ -0,0 +1,263 @@
+package ca.bc.gov.ols.cpf;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadGenerator drives GeocoderPlugin.execute() from many concurrent workers and reports the
+ * throughput and per-request latency distribution as JSON. It runs fully offline, against either
+ * the dummy geocoder or a geocoder configured from a file configuration store.
+ *
+ * <pre>
+ * Options:
+ *   --threads N        number of concurrent workers (default 16)
+ *   --iterations N     total number of measured requests (default: run for --duration)
+ *   --duration S       seconds to measure for (default 30)
+ *   --warmup S         seconds to run before measuring (default 10)
+ *   --input FILE       CSV of requests; either a header row of request parameter names
+ *                      (eg. addressString,localityName,yourId) or one address per line
+ *   --virtual          run each worker on a virtual thread (requires Java 21+)
+ *   --cache            enable the result cache; without it every request is geocoded, as
+ *                      the few distinct requests would otherwise almost all be cache hits
+ *   --config URL       use the FileGeocoderConfigurationStore at this file:// URL instead of
+ *                      the dummy geocoder
+ *   --report FILE      write the JSON report to FILE instead of standard out
+ * </pre>
+ */
+public class LoadGenerator {
+	private static final List<String> DEFAULT_ADDRESSES = Arrays.asList(
+			"805 Douglas Ave, Nanaimo, BC",
+			"815 Douglas Ave, Nanaimo, BC",
+			"5th St and Bruce Ave, Nanaimo, BC");
+
+	private int threads = 16;
+	private long iterations = -1;
+	private int durationSeconds = 30;
+	private int warmupSeconds = 10;
+	private String input;
+	private boolean virtual;
+	private boolean cache;
+	private String configUrl;
+	private String report;
+
+	private GeocoderPluginContext context;
+	private List<Map<String, String>> requests;
+
+	public static void main(String[] args) throws Exception {
+		LoadGenerator generator = new LoadGenerator();
+		generator.parseArgs(args);
+		generator.run();
+	}
+
+	private void parseArgs(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+				case "--threads":
+					threads = Integer.parseInt(args[++i]);
+					break;
+				case "--iterations":
+					iterations = Long.parseLong(args[++i]);
+					break;
+				case "--duration":
+					durationSeconds = Integer.parseInt(args[++i]);
+					break;
+				case "--warmup":
+					warmupSeconds = Integer.parseInt(args[++i]);
+					break;
+				case "--input":
+					input = args[++i];
+					break;
+				case "--virtual":
+					virtual = true;
+					break;
+				case "--cache":
+					cache = true;
+					break;
+				case "--config":
+					configUrl = args[++i];
+					break;
+				case "--report":
+					report = args[++i];
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+	}
+
+	public void run() throws Exception {
+		requests = loadRequests();
+		Properties overrides = new Properties();
+		if(configUrl == null) {
+			overrides.setProperty("geocoderFactory.dummyMode", "true");
+		} else {
+			overrides.setProperty("geocoderFactory.configurationStore",
+					"ca.bc.gov.ols.geocoder.config.FileGeocoderConfigurationStore");
+			overrides.setProperty("geocoderFactory.fileConfigurationUrl", configUrl);
+		}
+		// the load generator runs its own warm-up phase
+		overrides.setProperty("geocoderWarmUp.enabled", "false");
+		if(!cache) {
+			overrides.setProperty("geocodeResultCache.maxSize", "0");
+			overrides.setProperty("geocodeResultStore.directory", "");
+		}
+		context = new GeocoderPluginContext(overrides);
+		try {
+			if(warmupSeconds > 0) {
+				runPhase(-1, TimeUnit.SECONDS.toNanos(warmupSeconds), new LatencyHistogram());
+			}
+			LatencyHistogram histogram = new LatencyHistogram();
+			long start = System.nanoTime();
+			long errors = runPhase(iterations,
+					iterations < 0 ? TimeUnit.SECONDS.toNanos(durationSeconds) : Long.MAX_VALUE,
+					histogram);
+			writeReport(histogram, errors, System.nanoTime() - start);
+		} finally {
+			context.close();
+		}
+	}
+
+	/**
+	 * Runs the workers until the request count or the duration is reached.
+	 *
+	 * @return the number of failed requests
+	 */
+	private long runPhase(long count, long durationNanos, LatencyHistogram histogram)
+			throws InterruptedException {
+		AtomicLong remaining = new AtomicLong(count < 0 ? Long.MAX_VALUE : count);
+		LongAdder errors = new LongAdder();
+		boolean timed = durationNanos != Long.MAX_VALUE;
+		long deadline = System.nanoTime() + (timed ? durationNanos : 0);
+		ExecutorService executor = createExecutor();
+		for(int t = 0; t < threads; t++) {
+			final int offset = t;
+			executor.execute(() -> {
+				int next = offset;
+				while(remaining.getAndDecrement() > 0
+						&& (!timed || System.nanoTime() - deadline < 0)) {
+					Map<String, String> request = requests.get(Math.floorMod(next++, requests.size()));
+					long start = System.nanoTime();
+					try {
+						GeocoderPlugin plugin = context.createPlugin();
+						RequestParameterBinder.bind(plugin, request);
+						plugin.execute();
+					} catch(RuntimeException e) {
+						errors.increment();
+					}
+					histogram.record(System.nanoTime() - start);
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		return errors.sum();
+	}
+
+	private ExecutorService createExecutor() {
+		if(!virtual) {
+			return Executors.newFixedThreadPool(threads);
+		}
+		// looked up reflectively as the plugin is compiled for Java 11
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+		} catch(NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Virtual threads require Java 21 or later", e);
+		}
+	}
+
+	private List<Map<String, String>> loadRequests() throws IOException {
+		List<Map<String, String>> list = new ArrayList<Map<String, String>>();
+		if(input == null) {
+			for(String address : DEFAULT_ADDRESSES) {
+				list.add(addressRequest(address));
+			}
+			return list;
+		}
+		try(CsvReader reader = new CsvReader(new FileReader(input, StandardCharsets.UTF_8))) {
+			List<String> header = reader.readRecord();
+			boolean hasHeader = header != null && !header.isEmpty()
+					&& RequestParameterBinder.isParameter(header.get(0).trim());
+			if(header != null && !hasHeader) {
+				list.add(addressRequest(String.join(",", header)));
+			}
+			for(List<String> record = reader.readRecord(); record != null; record = reader
+					.readRecord()) {
+				if(!hasHeader) {
+					list.add(addressRequest(String.join(",", record)));
+					continue;
+				}
+				Map<String, String> request = new HashMap<String, String>();
+				for(int i = 0; i < header.size() && i < record.size(); i++) {
+					request.put(header.get(i).trim(), record.get(i));
+				}
+				list.add(request);
+			}
+		}
+		if(list.isEmpty()) {
+			throw new IllegalArgumentException("No requests in " + input);
+		}
+		return list;
+	}
+
+	private static Map<String, String> addressRequest(String address) {
+		Map<String, String> request = new HashMap<String, String>();
+		request.put("addressString", address);
+		return request;
+	}
+
+	private void writeReport(LatencyHistogram histogram, long errors, long elapsedNanos)
+			throws IOException {
+		Writer out = report == null ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+				: Files.newBufferedWriter(Paths.get(report), StandardCharsets.UTF_8);
+		try(PrintWriter pw = new PrintWriter(out)) {
+			double seconds = elapsedNanos / 1e9;
+			pw.println("{");
+			pw.println("  \"threads\": " + threads + ",");
+			pw.println("  \"virtualThreads\": " + virtual + ",");
+			pw.println("  \"resultCache\": " + cache + ",");
+			pw.println("  \"geocoder\": \"" + (configUrl == null ? "dummy" : "file") + "\",");
+			pw.println("  \"distinctRequests\": " + requests.size() + ",");
+			pw.println("  \"warmupSeconds\": " + warmupSeconds + ",");
+			pw.println("  \"elapsedSeconds\": " + format(seconds) + ",");
+			pw.println("  \"requests\": " + histogram.getCount() + ",");
+			pw.println("  \"errors\": " + errors + ",");
+			pw.println("  \"throughputPerSecond\": " + format(histogram.getCount() / seconds) + ",");
+			pw.println("  \"latencyMillis\": {");
+			pw.println("    \"mean\": " + millis(histogram.getMean()) + ",");
+			pw.println("    \"p50\": " + millis(histogram.getPercentile(50)) + ",");
+			pw.println("    \"p99\": " + millis(histogram.getPercentile(99)) + ",");
+			pw.println("    \"p99.9\": " + millis(histogram.getPercentile(99.9)) + ",");
+			pw.println("    \"max\": " + millis(histogram.getMax()));
+			pw.println("  }");
+			pw.println("}");
+		}
+	}
+
+	private static String millis(double nanos) {
+		return format(nanos / 1e6);
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+}
@@ -0,0 +1,124 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RegionRouterTest {
+	private static final String REGIONS = "localityName,region\n"
+			+ "Victoria,Capital\n"
+			+ "Saanich,Capital\n"
+			+ "Nanaimo,Nanaimo\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File regionsFile;
+
+	private File regionsFile() throws IOException {
+		if(regionsFile == null) {
+			regionsFile = folder.newFile("regions.csv");
+			Files.write(regionsFile.toPath(), REGIONS.getBytes(StandardCharsets.UTF_8));
+		}
+		return regionsFile;
+	}
+
+	private RegionRouter router(String regions) throws IOException {
+		RegionRouter router = new RegionRouter();
+		router.setLocalityRegionFile(regionsFile().getPath());
+		router.setRegions(regions);
+		router.load();
+		return router;
+	}
+
+	@Test
+	public void testRoute() throws IOException {
+		RegionRouter router = router("");
+		assertEquals("capital", router.route("Victoria", null));
+		assertEquals("capital", router.route(null, "1207 Douglas St, Victoria, BC"));
+		assertEquals("nanaimo", router.route("", "805 Douglas Ave,  nanaimo "));
+		assertEquals("capital", router.route("Unknown", "4000 Seymour Pl, Saanich"));
+		assertNull(router.route(null, "1207 Douglas St Victoria BC"));
+		assertNull(router.route(null, "Main St, Hope, BC"));
+		assertFalse(router.isPartitioned());
+		assertTrue(router.holds("nanaimo"));
+	}
+
+	@Test
+	public void testHolds() throws IOException {
+		RegionRouter router = router("Capital");
+		assertTrue(router.isPartitioned());
+		assertTrue(router.holds("capital"));
+		assertFalse(router.holds("nanaimo"));
+		assertFalse(router.holds(null));
+		assertTrue(router("").holds(null));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNoLocalityRegionFile() throws IOException {
+		RegionRouter router = new RegionRouter();
+		router.setRegions("Capital");
+		router.load();
+	}
+
+	@Test
+	public void testLoadReader() throws IOException {
+		RegionRouter router = new RegionRouter();
+		router.load(new StringReader(REGIONS));
+		assertEquals("nanaimo", router.route("Nanaimo", null));
+	}
+
+	@Test
+	public void testPartitions() throws IOException {
+		Properties capital = new Properties();
+		capital.setProperty("geocoderFactory.dummyMode", "true");
+		capital.setProperty("regionRouter.regions", "Capital");
+		Properties nanaimo = new Properties();
+		nanaimo.setProperty("geocoderFactory.dummyMode", "true");
+		nanaimo.setProperty("regionRouter.regions", "Nanaimo");
+		try(GeocoderPartitions partitions = new GeocoderPartitions(regionsFile().getPath(),
+				Arrays.asList(capital, nanaimo))) {
+			Map<String, String> request = new HashMap<String, String>();
+			request.put("addressString", "805 Douglas Ave, Nanaimo, BC");
+			assertEquals("nanaimo", partitions.route(request));
+			List<AddressResult> results = partitions.execute(request);
+			assertFalse(results.get(0).getFaults().startsWith("NOT_IN_PARTITION"));
+		}
+	}
+
+	@Test
+	public void testNotInPartition() throws IOException {
+		GeocoderPlugin plugin = new GeocoderPlugin();
+		plugin.setRegionRouter(router("Capital"));
+		plugin.setAddressString("805 Douglas Ave, Nanaimo, BC");
+		plugin.execute();
+		assertEquals(1, plugin.getResults().size());
+		assertTrue(plugin.getResults().get(0).getFaults().startsWith("NOT_IN_PARTITION"));
+	}
+
+	@Test
+	public void testUnknownRegion() throws IOException {
+		GeocoderPlugin plugin = new GeocoderPlugin();
+		plugin.setRegionRouter(router("Capital"));
+		plugin.setAddressString("Main St, Hope, BC");
+		plugin.execute();
+		assertEquals(1, plugin.getResults().size());
+		assertTrue(plugin.getResults().get(0).getFaults().startsWith("UNKNOWN_REGION"));
+	}
+}
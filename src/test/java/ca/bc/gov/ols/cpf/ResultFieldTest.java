@@ -0,0 +1,54 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import ca.bc.gov.open.cpf.plugin.api.ResultAttribute;
+
+public class ResultFieldTest {
+
+	@Test
+	public void testParseEmpty() {
+		assertNull(ResultField.parseList(null));
+		assertNull(ResultField.parseList(" "));
+	}
+
+	@Test
+	public void testParseList() {
+		assertEquals(EnumSet.of(ResultField.FULL_ADDRESS, ResultField.SCORE, ResultField.LOCATION),
+				ResultField.parseList("fullAddress, SCORE,location,"));
+		assertEquals(EnumSet.of(ResultField.SITE_ID), ResultField.parseList("siteid"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseUnknown() {
+		ResultField.parseList("fullAddress,notAField");
+	}
+
+	@Test
+	public void testAttributes() throws NoSuchMethodException {
+		for(ResultField field : ResultField.values()) {
+			String name = field.getAttributeName();
+			String getter = "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			assertNotNull(name, AddressResult.class.getMethod(getter)
+					.getAnnotation(ResultAttribute.class));
+		}
+	}
+
+	@Test
+	public void testValues() throws IOException, ReflectiveOperationException {
+		AddressResult result = AddressResultTest.populated();
+		for(ResultField field : ResultField.values()) {
+			String name = field.getAttributeName();
+			String getter = "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			assertEquals(name, AddressResult.class.getMethod(getter).invoke(result),
+					field.getValue(result));
+		}
+	}
+}
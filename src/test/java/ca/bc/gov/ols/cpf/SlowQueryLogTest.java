@@ -0,0 +1,80 @@
+package ca.bc.gov.ols.cpf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class SlowQueryLogTest {
+	private static final long MS = 1000000L;
+
+	@Test
+	public void testSlowest() {
+		SlowQueryLog log = new SlowQueryLog(2, 60);
+		log.record(MS, MS, 0, false, () -> "a");
+		log.record(MS, 3 * MS, 0, false, () -> "b");
+		log.record(MS, 2 * MS, 0, true, () -> "c");
+		List<SlowQueryLog.SlowQuery> queries = log.getSlowQueries();
+		assertEquals(2, queries.size());
+		assertEquals("b", queries.get(0).getInput());
+		assertEquals(4, queries.get(0).getTotalMillis(), 0);
+		assertEquals("c", queries.get(1).getInput());
+		assertTrue(queries.get(1).isTimedOut());
+	}
+
+	@Test
+	public void testThreshold() {
+		SlowQueryLog log = new SlowQueryLog(1, 60);
+		log.record(0, 5 * MS, 0, false, () -> "slow");
+		// sets the threshold to the slowest entry
+		log.record(0, MS, 0, false, () -> "fast");
+		// below the threshold, so the input is never described
+		log.record(0, MS, 0, false, () -> {
+			fail("the input of a fast request was described");
+			return null;
+		});
+		assertEquals("slow", log.getSlowQueries().get(0).getInput());
+		log.clear();
+		assertTrue(log.getSlowQueries().isEmpty());
+		log.record(0, MS, 0, false, () -> "after clear");
+		assertEquals("after clear", log.getSlowQueries().get(0).getInput());
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		SlowQueryLog log = new SlowQueryLog(5, 60);
+		int threads = 8;
+		int perThread = 1000;
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for(int t = 0; t < threads; t++) {
+			int offset = t;
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch(InterruptedException e) {
+					return;
+				}
+				for(int i = 0; i < perThread; i++) {
+					long nanos = (long)(i * threads + offset) * MS;
+					log.record(0, nanos, 0, false, () -> String.valueOf(nanos / MS));
+				}
+			});
+			workers[t].start();
+		}
+		start.countDown();
+		for(Thread worker : workers) {
+			worker.join();
+		}
+		// the compare-and-set replacement keeps exactly the five slowest
+		List<SlowQueryLog.SlowQuery> queries = log.getSlowQueries();
+		assertEquals(5, queries.size());
+		for(int i = 0; i < 5; i++) {
+			assertEquals(String.valueOf(threads * perThread - 1 - i), queries.get(i).getInput());
+		}
+	}
+}